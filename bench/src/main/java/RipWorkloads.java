@@ -0,0 +1,278 @@
+import bench.Workload;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+/**
+ * the workloads of the benchmarks, see bench.RipBenchmark. tables are filled with random unique prefixes from a fixed
+ * seed so every run measures the same tables
+ */
+public class RipWorkloads {
+
+    private static final long SEED = 2453;
+    private static int nextPort = 20000; // every router built for a benchmark gets its own in-memory endpoint
+
+    /**
+     * random unique prefixes, the address of each is masked to its length
+     *
+     * @param count - the number of prefixes
+     * @return the packed RouteTable keys of the prefixes
+     */
+    static long[] prefixes(int count) {
+        Random random = new Random(SEED);
+        HashSet<Long> seen = new HashSet<>();
+        long[] keys = new long[count];
+        for (int i = 0; i < count; ) {
+            int length = 16 + random.nextInt(15);
+            int address = random.nextInt() & PrefixTrie.mask(length);
+            long key = RouteTable.key(address, length);
+            if (seen.add(key)) keys[i++] = key;
+        }
+        return keys;
+    }
+
+    static int address(long key) {
+        return (int) (key >>> 8);
+    }
+
+    static int length(long key) {
+        return (int) (key & 0xFF);
+    }
+
+    /**
+     * encodes the prefixes as back to back rip responses of 25 entries
+     *
+     * @param keys   - the prefixes
+     * @param metric - the metric of every entry
+     * @return one buffer per datagram, flipped for reading
+     */
+    static ByteBuffer[] responses(long[] keys, int metric) {
+        int count = (keys.length + RipDecoder.MAX_ENTRIES - 1) / RipDecoder.MAX_ENTRIES;
+        ByteBuffer[] datagrams = new ByteBuffer[count];
+        for (int d = 0; d < count; d++) {
+            ByteBuffer buffer = ByteBuffer.allocate(RipDecoder.MAX_SIZE);
+            buffer.put((byte) 2).put((byte) 2).putShort((short) 0);
+            for (int i = d * RipDecoder.MAX_ENTRIES; i < Math.min(keys.length, (d + 1) * RipDecoder.MAX_ENTRIES); i++) {
+                buffer.putShort((short) RipDecoder.AF_INET).putShort((short) 0)
+                        .putInt(address(keys[i])).putInt(PrefixTrie.mask(length(keys[i])))
+                        .putInt(0).putInt(metric);
+            }
+            datagrams[d] = buffer.flip();
+        }
+        return datagrams;
+    }
+
+    /**
+     * a started router with one in-memory interface and no peer, responses are handed straight to it
+     */
+    private abstract static class RouterWorkload implements Workload {
+        final DiscreteEventScheduler scheduler = new DiscreteEventScheduler(SEED);
+        final Router router = new Router();
+        ByteBuffer[] datagrams;
+        int next = 0;
+
+        void start(long[] keys) {
+            int port = nextPort;
+            nextPort += 2;
+            router.newInterface("127.0.0.1:" + port, "127.0.0.1:" + (port + 1), "transport=mem");
+            router.start(scheduler);
+            scheduler.run(0);
+            for (ByteBuffer datagram : responses(keys, 1)) router.handleRouteResponse(datagram, 0);
+            router.publish();
+        }
+    }
+
+    public static class Decode extends RouterWorkload {
+        @Override
+        public void setup(int routes) {
+            long[] keys = prefixes(routes);
+            start(keys);
+            datagrams = responses(keys, 1);
+        }
+
+        @Override
+        public long run() {
+            ByteBuffer datagram = datagrams[next];
+            next = next + 1 == datagrams.length ? 0 : next + 1;
+            return router.handleRouteResponse(datagram, 0) ? 1 : 0;
+        }
+    }
+
+    public static class Update extends RouterWorkload {
+        private ByteBuffer[] other;
+
+        @Override
+        public void setup(int routes) {
+            long[] keys = prefixes(routes);
+            start(keys);
+            datagrams = responses(keys, 2);
+            other = responses(keys, 1);
+        }
+
+        @Override
+        public long run() {
+            ByteBuffer datagram = datagrams[next];
+            if (++next == datagrams.length) { // every route has changed, flip them all back on the next pass
+                next = 0;
+                ByteBuffer[] swap = datagrams;
+                datagrams = other;
+                other = swap;
+            }
+            // one datagram is one batch, published like the router does once its receive ring is drained, which
+            // also hands the slots the table recorded as changed to the snapshot rather than letting them pile up
+            boolean changed = router.handleRouteResponse(datagram, 0);
+            router.publish();
+            return changed ? 1 : 0;
+        }
+    }
+
+    public static class Encode implements Workload {
+        private final ResponseEncoder encoder = new ResponseEncoder();
+        private final Interface sink = new Interface(new Discard(), 0, 0);
+        private RouteTable table;
+        private int next = 0;
+
+        @Override
+        public void setup(int routes) {
+            long[] keys = prefixes(routes);
+            table = new RouteTable(routes);
+            table.defineHop(0, 0x7F000001, 20000);
+            table.defineHop(1, 0x7F000001, 20001);
+            for (int i = 0; i < keys.length; i++) table.add(address(keys[i]), length(keys[i]), 2, i & 1, 0);
+        }
+
+        @Override
+        public long run() {
+            int slot = next;
+            next = next + 1 == table.limit() ? 0 : next + 1;
+            table.set(slot, table.metric(slot) ^ 1, table.hop(slot), 0);
+            encoder.prepare(table.snapshot());
+            encoder.send(sink, 0);
+            return encoder.count();
+        }
+    }
+
+    public static class Insert implements Workload {
+        private final PrefixTrie forwarding = new PrefixTrie();
+        private ExpiryWheel expiry;
+        private RouteTable table;
+        private long[] keys;
+        private int[] slots;
+        private int oldest = 0;
+        private int routes;
+
+        @Override
+        public void setup(int routes) {
+            this.routes = routes;
+            keys = prefixes(routes * 2);
+            slots = new int[keys.length];
+            table = new RouteTable(routes);
+            table.defineHop(0, 0x7F000001, 20000);
+            expiry = new ExpiryWheel(5000, 64, 0);
+            for (int i = 0; i < routes; i++) add(i);
+        }
+
+        @Override
+        public long run() {
+            int slot = slots[oldest];
+            expiry.cancel(slot);
+            forwarding.remove(table.address(slot), table.prefix(slot));
+            table.remove(slot);
+            add((oldest + routes) % keys.length);
+            oldest = oldest + 1 == keys.length ? 0 : oldest + 1;
+            return table.size();
+        }
+
+        private void add(int i) {
+            int slot = table.add(address(keys[i]), length(keys[i]), 2, 0, 0);
+            forwarding.put(address(keys[i]), length(keys[i]), slot);
+            expiry.schedule(slot, 180000);
+            slots[i] = slot;
+        }
+    }
+
+    public static class Expire implements Workload {
+        private static final long TICK = 5000;
+        private static final long TIMEOUT = 180000;
+        private ExpiryWheel expiry;
+        private long now = 0;
+        private final IntConsumer refresh = slot -> expiry.schedule(slot, now + TIMEOUT);
+
+        @Override
+        public void setup(int routes) {
+            expiry = new ExpiryWheel(TICK, 64, 0);
+            Random random = new Random(SEED);
+            for (int slot = 0; slot < routes; slot++) expiry.schedule(slot, 1 + random.nextInt((int) TIMEOUT));
+        }
+
+        @Override
+        public long run() {
+            now += TICK;
+            expiry.advance(now, refresh);
+            return expiry.size();
+        }
+    }
+
+    public static class Lookup implements Workload {
+        private final PrefixTrie forwarding = new PrefixTrie();
+        private final int[] addresses = new int[4096];
+        private int next = 0;
+
+        @Override
+        public void setup(int routes) {
+            long[] keys = prefixes(routes);
+            for (int i = 0; i < keys.length; i++) forwarding.put(address(keys[i]), length(keys[i]), i);
+            // half the addresses fall inside a route, the rest are random and mostly miss
+            Random random = new Random(SEED);
+            for (int i = 0; i < addresses.length; i++) {
+                long key = keys[random.nextInt(keys.length)];
+                addresses[i] = (i & 1) == 0 ? random.nextInt() : address(key) | (random.nextInt() & ~PrefixTrie.mask(length(key)));
+            }
+        }
+
+        @Override
+        public long run() {
+            int address = addresses[next];
+            next = (next + 1) & (addresses.length - 1);
+            return forwarding.lookup(address);
+        }
+    }
+
+    /**
+     * a transport that throws away everything sent through it
+     */
+    private static class Discard implements Transport {
+        @Override
+        public void open(Scheduler loop, ReceiveRing ring, Runnable onReceive) {
+        }
+
+        @Override
+        public int receiveBuffers() {
+            return 1;
+        }
+
+        @Override
+        public void send(ByteBuffer data) {
+        }
+
+        @Override
+        public void setPaused(boolean paused) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public int localAddress() {
+            return 0;
+        }
+
+        @Override
+        public int localPort() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * throughput of the routing hot paths at different table sizes, run with -prof gc for the allocation rate
+ * <p>
+ * decode - handle one 25 entry response that only refreshes known routes
+ * update - handle one 25 entry response that changes the metric of every route
+ * encode - rebuild the full response after a change and send it through one interface
+ * insert - add one new route and remove the oldest, keeping the table at its size
+ * expire - advance the expiry wheel by one tick, refreshing every route that timed out
+ * lookup - longest prefix match of one address
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RipBenchmark {
+
+    @Param({"decode", "update", "encode", "insert", "expire", "lookup"})
+    public String workload;
+
+    @Param({"25", "1000", "10000", "100000"})
+    public int routes;
+
+    private Workload work;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        String name = "RipWorkloads$" + Character.toUpperCase(workload.charAt(0)) + workload.substring(1);
+        work = (Workload) Class.forName(name).getDeclaredConstructor().newInstance();
+        work.setup(routes);
+    }
+
+    @Benchmark
+    public long run() {
+        return work.run();
+    }
+}
@@ -0,0 +1,23 @@
+package bench;
+
+/**
+ * one hot path of the simulator, set up at a given table size. the simulator classes live in the default package,
+ * which a benchmark in a named package can't refer to, so each workload is implemented next to them in
+ * RipWorkloads and loaded by name
+ */
+public interface Workload {
+
+    /**
+     * builds the tables the workload runs against
+     *
+     * @param routes - the number of routes in the table
+     */
+    void setup(int routes);
+
+    /**
+     * runs one operation of the workload
+     *
+     * @return a value depending on the work done, for the benchmark to consume
+     */
+    long run();
+}
@@ -0,0 +1,163 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+/**
+ * runs generated networks headless on a virtual clock with the RFC timers and reports how they converge, one CSV
+ * row per network. a network has converged once no routing table has changed for a route timeout, the run ends
+ * then or when the simulated time runs out. reachability is the share of (router, network) pairs with a route, it
+ * stays below 1 when the network is wider than RIP's 15 hops
+ */
+public class ConvergenceHarness {
+
+    private static final String usage = "java -cp rip2sim.jar ConvergenceHarness [-sim maxSeconds] [-seed n] [-offheap] [-o results.csv] topology:routers:networksPerRouter...";
+    private static final String HEADER = "topology,routers,links,networks_per_router,seed,converged,convergence_s,simulated_s,reachability,"
+            + "messages,bytes,peak_table,events,wall_ms,cpu_ms_per_router,heap_kb_per_router,direct_kb_per_router";
+    private static final RipTimers timers = RipTimers.RFC;
+
+    public static void main(String[] args) {
+        long simulate = 3600;
+        long seed = 1;
+        String output = null;
+        ArrayList<String> specs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-sim":
+                        simulate = Long.parseLong(args[++i]);
+                        break;
+                    case "-seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "-o":
+                        output = args[++i];
+                        break;
+                    case "-offheap":
+                        Router.setOffHeapTables(true);
+                        break;
+                    default:
+                        specs.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        if (specs.isEmpty()) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+
+        Router.setTimers(timers);
+        Router.setDefaultTransport("mem");
+
+        PrintStream out = System.out;
+        try {
+            if (output != null) {
+                File file = new File(output);
+                boolean header = !file.exists() || file.length() == 0;
+                out = new PrintStream(new FileOutputStream(file, true), true);
+                if (header) out.println(HEADER);
+            } else {
+                out.println(HEADER);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        for (String spec : specs) {
+            try {
+                String[] s = spec.split(":");
+                TopologyGenerator network = new TopologyGenerator(s[0], Integer.parseInt(s[1]), Integer.parseInt(s[2]), seed);
+                out.println(run(network, seed, simulate));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                System.err.println("invalid network " + spec + ", expected topology:routers:networksPerRouter");
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        if (out != System.out) out.close();
+    }
+
+    /**
+     * simulates one network
+     *
+     * @param network  - the generated network
+     * @param seed     - the seed of the simulation
+     * @param simulate - the most seconds to simulate
+     * @return the CSV row of the results
+     */
+    private static String run(TopologyGenerator network, long seed, long simulate) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean cpu = ManagementFactory.getThreadMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        long directBefore = direct();
+
+        ArrayList<Router> routers = new ArrayList<>();
+        for (ArrayList<String> config : network.configs()) {
+            routers.add(NetworkSimulator.InitializeNode(config));
+        }
+        int networks = network.routers * network.networks;
+
+        long wallStart = System.nanoTime();
+        long cpuStart = cpu.getCurrentThreadCpuTime();
+        DiscreteEventScheduler scheduler = new DiscreteEventScheduler(seed);
+        routers.forEach(router -> router.start(scheduler));
+        long limit = simulate * 1000;
+        long lastChange = 0;
+        boolean converged;
+        // step one update interval at a time, every route has been advertised again by the end of each step
+        for (long t = timers.update; ; t += timers.update) {
+            scheduler.run(Math.min(t, limit));
+            lastChange = 0;
+            for (Router router : routers) lastChange = Math.max(lastChange, router.lastChange());
+            converged = scheduler.now() - lastChange >= timers.timeout;
+            if (converged || t >= limit) break;
+        }
+        long reachable = 0;
+        for (Router router : routers) reachable += router.reachableRoutes();
+        long cpuMs = (cpu.getCurrentThreadCpuTime() - cpuStart) / 1000000;
+        long wallMs = (System.nanoTime() - wallStart) / 1000000;
+
+        System.gc();
+        long heap = memory.getHeapMemoryUsage().getUsed() - heapBefore;
+        long direct = direct() - directBefore;
+        long messages = 0;
+        long bytes = 0;
+        int peak = 0;
+        for (Router router : routers) {
+            messages += router.stats().getPacketsSent();
+            bytes += router.stats().getBytesSent();
+            peak = Math.max(peak, router.peakRoutes());
+        }
+
+        String row = String.format("%s,%d,%d,%d,%d,%b,%.3f,%.3f,%.4f,%d,%d,%d,%d,%d,%.3f,%.1f,%.1f",
+                network.topology, network.routers, network.links.size(), network.networks, seed, converged,
+                lastChange / 1000.0, scheduler.now() / 1000.0, (double) reachable / routers.size() / networks, messages, bytes, peak, scheduler.processed(), wallMs,
+                (double) cpuMs / network.routers, Math.max(heap, 0) / 1024.0 / network.routers,
+                Math.max(direct, 0) / 1024.0 / network.routers);
+
+        // release the in-memory endpoints for the next network
+        routers.forEach(Router::kill);
+        scheduler.run(scheduler.now());
+        return row;
+    }
+
+    /**
+     * the direct buffer memory in use, where the off heap routing tables live
+     */
+    private static long direct() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) return pool.getMemoryUsed();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * a scheduler on a virtual clock. events are kept in one priority queue ordered by time then by the order they were
+ * queued, and the clock jumps straight to the next event, so the timers of a simulation cost nothing while nothing
+ * happens. with a fixed seed a run is fully reproducible. single threaded, every router of the simulation has to
+ * run on the same scheduler and everything else has to wait for run to return
+ */
+class DiscreteEventScheduler implements Scheduler {
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final Random random;
+    private long now = 0;
+    private long seq = 0;
+    private long processed = 0;
+
+    /**
+     * constructor for a scheduler starting at time 0
+     *
+     * @param seed - the seed of the random number generator
+     */
+    DiscreteEventScheduler(long seed) {
+        random = new Random(seed);
+    }
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        events.add(new Event(now, seq++, task));
+    }
+
+    @Override
+    public void schedule(Runnable task, long delay) {
+        events.add(new Event(now + Math.max(delay, 0), seq++, task));
+    }
+
+    @Override
+    public Random random() {
+        return random;
+    }
+
+    /**
+     * runs every event up to a time, then leaves the clock there
+     *
+     * @param until - the time in milliseconds to stop at
+     */
+    void run(long until) {
+        while (!events.isEmpty() && events.peek().time <= until) {
+            Event event = events.poll();
+            now = event.time;
+            processed++;
+            try {
+                event.task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        now = Math.max(now, until);
+    }
+
+    /**
+     * the number of events run so far
+     *
+     * @return the event count
+     */
+    long processed() {
+        return processed;
+    }
+
+    /**
+     * a queued event, ordered by time then by queueing order
+     */
+    private static class Event implements Comparable<Event> {
+        private final long time;
+        private final long seq;
+        private final Runnable task;
+
+        Event(long time, long seq, Runnable task) {
+            this.time = time;
+            this.seq = seq;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            if (time != o.time) return Long.compare(time, o.time);
+            return Long.compare(seq, o.seq);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * a single worker thread that multiplexes the channels and timers of many routers over one selector, on the wall
+ * clock
+ */
+public class EventLoop implements Runnable, Scheduler {
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long timerSeq = 0;
+
+    /**
+     * constructor for an event loop, the thread isn't started until start is called
+     *
+     * @param name - the name of the worker thread
+     * @throws IOException if the selector can't be opened
+     */
+    EventLoop(String name) throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this, name);
+    }
+
+    /**
+     * starts the worker thread
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * checks if the caller is running on this loop
+     *
+     * @return true if called from the worker thread
+     */
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public long now() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public Random random() {
+        return ThreadLocalRandom.current();
+    }
+
+    /**
+     * queues a task to be run on the worker thread, safe to call from any thread
+     *
+     * @param task - the task to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (!inLoop()) selector.wakeup();
+    }
+
+    /**
+     * runs a task on the worker thread after a delay
+     *
+     * @param task  - the task to run
+     * @param delay - the delay in milliseconds
+     */
+    @Override
+    public void schedule(Runnable task, long delay) {
+        if (!inLoop()) {
+            execute(() -> schedule(task, delay));
+            return;
+        }
+        timers.add(new Timer(now() + delay, timerSeq++, task));
+    }
+
+    /**
+     * registers a channel for reads, must be called from the worker thread
+     *
+     * @param channel    - the channel to watch, will be made non blocking
+     * @param onReadable - called on the worker thread whenever the channel has data waiting
+     * @return the selection key of the registration
+     * @throws IOException if the channel is closed or can't be made non blocking
+     */
+    SelectionKey register(SelectableChannel channel, Runnable onReadable) throws IOException {
+        channel.configureBlocking(false);
+        try {
+            return channel.register(selector, SelectionKey.OP_READ, onReadable);
+        } catch (ClosedChannelException e) {
+            throw new IOException("channel closed before registration", e);
+        }
+    }
+
+    /**
+     * stops the worker thread once the current iteration completes
+     */
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * the worker loop, blocks on the selector until a channel is ready, a task is queued or a timer is due
+     */
+    public void run() {
+        while (running) {
+            long timeout = runTimers();
+            try {
+                if (tasks.isEmpty()) {
+                    selector.select(timeout);
+                } else {
+                    selector.selectNow();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                break;
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid()) runSafely((Runnable) key.attachment());
+            }
+
+            Runnable task;
+            while ((task = tasks.poll()) != null) runSafely(task);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * runs every timer that is due
+     *
+     * @return milliseconds until the next timer is due, 0 if there are no timers
+     */
+    private long runTimers() {
+        while (!timers.isEmpty()) {
+            long wait = timers.peek().deadline - now();
+            if (wait > 0) return wait;
+            runSafely(timers.poll().task);
+        }
+        return 0;
+    }
+
+    /**
+     * runs a task, a failing router shouldn't take down the other routers on the loop
+     *
+     * @param task - the task to run
+     */
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * a pending timer, ordered by deadline then by scheduling order
+     */
+    private static class Timer implements Comparable<Timer> {
+        private final long deadline;
+        private final long seq;
+        private final Runnable task;
+
+        Timer(long deadline, long seq, Runnable task) {
+            this.deadline = deadline;
+            this.seq = seq;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Timer o) {
+            if (deadline != o.deadline) return Long.compare(deadline, o.deadline);
+            return Long.compare(seq, o.seq);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * a hashed timing wheel of routing table slots. each slot has at most one deadline and sits in the bucket of that
+ * deadline on an intrusive doubly linked list, so scheduling, rescheduling and cancelling are O(1) and advancing the
+ * wheel only visits the buckets that came due. deadlines further out than one turn of the wheel stay in their
+ * bucket until the turn they are due in. a bucket is only swept once its whole tick has passed, so a slot expires
+ * at most one tick late. not thread safe
+ */
+class ExpiryWheel {
+
+    private static final int NONE = -1;
+
+    private final long tick;
+    private final int mask;
+    private final int[] heads;
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private int[] bucketOf = new int[0]; // NONE while the slot isn't scheduled
+    private long[] deadline = new long[0];
+    private long lastTick; // the last tick that has been swept
+    private int size = 0;
+
+    /**
+     * constructor for a timing wheel
+     *
+     * @param tick    - the milliseconds covered by each bucket
+     * @param buckets - the number of buckets, rounded up to a power of two
+     * @param now     - the current time in milliseconds
+     */
+    ExpiryWheel(long tick, int buckets, long now) {
+        this.tick = tick;
+        int count = Integer.highestOneBit(Math.max(buckets, 2) - 1) << 1;
+        heads = new int[count];
+        Arrays.fill(heads, NONE);
+        mask = count - 1;
+        lastTick = now / tick - 1;
+    }
+
+    /**
+     * sets or moves the deadline of a slot
+     *
+     * @param slot - the routing table slot
+     * @param when - the time in milliseconds the slot expires
+     */
+    void schedule(int slot, long when) {
+        if (slot >= bucketOf.length) grow(slot + 1);
+        if (bucketOf[slot] != NONE) unlink(slot);
+        deadline[slot] = when;
+        // never file into a bucket that has already been swept in this turn
+        link(slot, (int) (Math.max(when / tick, lastTick + 1) & mask));
+    }
+
+    /**
+     * removes the deadline of a slot, if it has one
+     *
+     * @param slot - the routing table slot
+     */
+    void cancel(int slot) {
+        if (slot < bucketOf.length && bucketOf[slot] != NONE) unlink(slot);
+    }
+
+    /**
+     * the number of slots waiting to expire
+     *
+     * @return the scheduled slot count
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * expires the slots of every tick that has passed, each one is unscheduled before it is handed to the callback so
+     * the callback can schedule it again
+     *
+     * @param now     - the current time in milliseconds
+     * @param expired - called with each expired slot
+     */
+    void advance(long now, IntConsumer expired) {
+        long nowTick = now / tick;
+        long from = Math.max(lastTick + 1, nowTick - 1 - mask);
+        for (long t = from; t < nowTick; t++) {
+            lastTick = t; // anything the callback schedules lands in a later bucket
+            int bucket = (int) (t & mask);
+            int slot = heads[bucket];
+            heads[bucket] = NONE;
+            // walk the detached list, putting back anything due in a later turn
+            while (slot != NONE) {
+                int following = next[slot];
+                size--;
+                bucketOf[slot] = NONE;
+                if (deadline[slot] <= now) {
+                    expired.accept(slot);
+                } else {
+                    link(slot, bucket);
+                }
+                slot = following;
+            }
+        }
+    }
+
+    private void link(int slot, int bucket) {
+        int head = heads[bucket];
+        next[slot] = head;
+        prev[slot] = NONE;
+        if (head != NONE) prev[head] = slot;
+        heads[bucket] = slot;
+        bucketOf[slot] = bucket;
+        size++;
+    }
+
+    private void unlink(int slot) {
+        int bucket = bucketOf[slot];
+        if (prev[slot] == NONE) {
+            heads[bucket] = next[slot];
+        } else {
+            next[prev[slot]] = next[slot];
+        }
+        if (next[slot] != NONE) prev[next[slot]] = prev[slot];
+        bucketOf[slot] = NONE;
+        size--;
+    }
+
+    private void grow(int capacity) {
+        int old = bucketOf.length;
+        capacity = Math.max(capacity, old * 2);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        deadline = Arrays.copyOf(deadline, capacity);
+        bucketOf = Arrays.copyOf(bucketOf, capacity);
+        Arrays.fill(bucketOf, old, capacity, NONE);
+    }
+}
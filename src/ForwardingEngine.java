@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a synthetic data plane over the routing tables the routers have learned. a packet is only a destination address,
+ * the router it is at and the hops it has taken, kept in primitive arrays and forwarded a batch at a time, each hop
+ * a longest prefix match in the latest snapshot of the router the packet is at. a packet is delivered by the router
+ * its destination network is directly connected to, blackholed where there is no reachable route, and counted as
+ * looping once it has used up MAX_HOPS. the tables are only read, so traffic can be forwarded while the routers run
+ */
+class ForwardingEngine {
+
+    static final int MAX_HOPS = 64; // the ttl of every packet
+    private static final int BATCH = 1024;
+    private static final int DELIVER = -1; // next router of a directly connected network
+    private static final int DROP = -2; // next router of a route through a link that leaves the topology
+
+    private final List<Router> routers;
+    private final int[][] neighbours; // the router at the far end of each interface of each router, or DROP
+    private final int[] networks; // address of every directly connected network, the destinations of the traffic
+    private final int[] lengths; // and its prefix length
+
+    /**
+     * constructor for an engine over a set of routers, links to endpoints outside the set forward nowhere
+     *
+     * @param routers - the routers, a packet's router is its index in this list, nulls are skipped
+     */
+    ForwardingEngine(List<Router> routers) {
+        this.routers = routers;
+        HashMap<Long, Integer> owners = new HashMap<>();
+        for (int r = 0; r < routers.size(); r++) {
+            if (routers.get(r) == null) continue;
+            for (Interface inter : routers.get(r).interfaces()) {
+                owners.put(endpoint(inter.getLocalAddressInt(), inter.getLocalPort()), r);
+            }
+        }
+        neighbours = new int[routers.size()][];
+        ArrayList<Long> connected = new ArrayList<>();
+        for (int r = 0; r < routers.size(); r++) {
+            if (routers.get(r) == null) {
+                neighbours[r] = new int[0];
+                continue;
+            }
+            List<Interface> interfaces = routers.get(r).interfaces();
+            neighbours[r] = new int[interfaces.size()];
+            for (int hop = 0; hop < interfaces.size(); hop++) {
+                Interface inter = interfaces.get(hop);
+                neighbours[r][hop] = owners.getOrDefault(
+                        endpoint(inter.getRemoteAddressInt(), inter.getRemotePort()), DROP);
+            }
+            RouteSnapshot routes = routers.get(r).acquire();
+            for (int slot = 0; slot < routes.limit(); slot++) {
+                if (routes.inUse(slot) && routes.hop(slot) == RouteTable.LOCAL) {
+                    connected.add(RouteTable.key(routes.address(slot), routes.prefix(slot)));
+                }
+            }
+            routers.get(r).release(routes);
+        }
+        networks = connected.stream().mapToInt(key -> (int) (key >>> 8)).toArray();
+        lengths = connected.stream().mapToInt(key -> (int) (key & 0xFF)).toArray();
+    }
+
+    /**
+     * forwards random traffic, each packet from a random router to a random host of a random connected network
+     *
+     * @param packets - the number of packets to inject
+     * @param threads - the number of worker threads
+     * @param seed    - the seed of the traffic, every batch has its own stream of it
+     * @return what happened to the packets
+     */
+    Result run(long packets, int threads, long seed) {
+        Result total = new Result(threads);
+        if (networks.length == 0 || packets <= 0) return total;
+        long batches = (packets + BATCH - 1) / BATCH;
+        AtomicLong nextBatch = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<Result>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                Result result = new Result(threads);
+                int[] destination = new int[BATCH];
+                int[] at = new int[BATCH];
+                int[] hops = new int[BATCH];
+                RouteSnapshot[] held = new RouteSnapshot[routers.size()];
+                for (long b = nextBatch.getAndIncrement(); b < batches; b = nextBatch.getAndIncrement()) {
+                    int size = (int) Math.min(BATCH, packets - b * BATCH);
+                    inject(new SplittableRandom(seed * 31 + b), destination, at, size);
+                    forward(destination, at, hops, held, size, result);
+                }
+                return result;
+            }));
+        }
+        try {
+            for (Future<Result> worker : workers) total.add(worker.get());
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            pool.shutdown();
+        }
+        total.nanos = System.nanoTime() - start;
+        return total;
+    }
+
+    /**
+     * fills a batch with new packets
+     */
+    private void inject(SplittableRandom random, int[] destination, int[] at, int size) {
+        for (int i = 0; i < size; i++) {
+            int network = random.nextInt(networks.length);
+            destination[i] = networks[network] | (random.nextInt() & ~PrefixTrie.mask(lengths[network]));
+            int router;
+            do {
+                router = random.nextInt(routers.size());
+            } while (routers.get(router) == null);
+            at[i] = router;
+        }
+    }
+
+    /**
+     * forwards a batch one hop at a time until every packet has left it. the packets still in flight are compacted
+     * to the front of the arrays after each hop, so every pass is a straight run over live packets. each router's
+     * snapshot is pinned the first time a packet of the batch reaches it and released at the end of the batch
+     */
+    private void forward(int[] destination, int[] at, int[] hops, RouteSnapshot[] held, int size, Result result) {
+        Arrays.fill(hops, 0, size, 0);
+        int live = size;
+        while (live > 0) {
+            int kept = 0;
+            for (int i = 0; i < live; i++) {
+                if (held[at[i]] == null) held[at[i]] = routers.get(at[i]).acquire();
+                int next = next(held[at[i]], at[i], destination[i]);
+                result.lookups++;
+                if (next == DELIVER) {
+                    result.delivered++;
+                    result.pathTotal += hops[i];
+                    result.longestPath = Math.max(result.longestPath, hops[i]);
+                } else if (next == DROP) {
+                    result.blackholed++;
+                } else if (hops[i] == MAX_HOPS) {
+                    result.looped++;
+                } else {
+                    destination[kept] = destination[i];
+                    at[kept] = next;
+                    hops[kept] = hops[i] + 1;
+                    kept++;
+                }
+            }
+            live = kept;
+        }
+        result.packets += size;
+        for (int r = 0; r < held.length; r++) {
+            if (held[r] == null) continue;
+            routers.get(r).release(held[r]);
+            held[r] = null;
+        }
+    }
+
+    /**
+     * the router a destination is forwarded to, by the forwarding trie published with a snapshot of the router
+     *
+     * @param routes      - the snapshot
+     * @param router      - the router the packet is at
+     * @param destination - the destination address
+     * @return the index of the next router, DELIVER if the destination is directly connected or DROP
+     */
+    private int next(RouteSnapshot routes, int router, int destination) {
+        int slot = routes.lookup(destination);
+        if (slot == PrefixTrie.NIL) return DROP;
+        int hop = routes.hop(slot);
+        return hop == RouteTable.LOCAL ? DELIVER : hop < neighbours[router].length ? neighbours[router][hop] : DROP;
+    }
+
+    private static long endpoint(int address, int port) {
+        return (address & 0xFFFFFFFFL) << 16 | (port & 0xFFFF);
+    }
+
+    /**
+     * the outcome of a run
+     */
+    static class Result {
+        final int threads;
+        long packets;
+        long delivered;
+        long blackholed;
+        long looped;
+        long lookups; // one per hop of every packet, the forwarding decisions made
+        long pathTotal; // hops of the delivered packets
+        int longestPath;
+        long nanos;
+
+        Result(int threads) {
+            this.threads = threads;
+        }
+
+        private void add(Result other) {
+            packets += other.packets;
+            delivered += other.delivered;
+            blackholed += other.blackholed;
+            looped += other.looped;
+            lookups += other.lookups;
+            pathTotal += other.pathTotal;
+            longestPath = Math.max(longestPath, other.longestPath);
+        }
+
+        /**
+         * the packets forwarded to their end, in millions per second
+         */
+        double mpps() {
+            return nanos == 0 ? 0 : packets * 1000.0 / nanos;
+        }
+
+        public String toString() {
+            double seconds = nanos / 1e9;
+            return String.format("forwarded %d packets in %.3f s on %d threads\n"
+                            + "delivered \t\t %d (%.2f%%, mean path %.2f hops, longest %d)\n"
+                            + "blackholed \t\t %d\n"
+                            + "looped \t\t\t %d (more than %d hops)\n"
+                            + "throughput \t\t %.2f Mpps, %.2f M lookups/s",
+                    packets, seconds, threads,
+                    delivered, packets == 0 ? 0 : 100.0 * delivered / packets,
+                    delivered == 0 ? 0 : (double) pathTotal / delivered, longestPath,
+                    blackholed, looped, MAX_HOPS,
+                    mpps(), nanos == 0 ? 0 : lookups * 1000.0 / nanos);
+        }
+    }
+}
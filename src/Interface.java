@@ -1,69 +1,224 @@
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-
-public class Interface implements Runnable {
-
-    private final DatagramSocket socket;
-    private boolean newData = false;
-    private final ConcurrentLinkedQueue<DatagramPacket> received = new ConcurrentLinkedQueue<>();
-    private volatile boolean run = true;
-    private static final int BUF_SIZE = 512;
-    private final InetAddress remoteAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Interface {
+
+    private final Transport transport;
+    private static final int BUF_SIZE = RipDecoder.MAX_SIZE;
+    private final ReceiveRing ring;
+    private final int remoteAddress;
     private final int remotePort;
+    private final boolean summarize;
+    private final long helloInterval; // 0 when the link doesn't send hellos
+    private final int detectMultiplier;
+    private long lastHeard; // scheduler time of the last datagram from the neighbour
+    private boolean helloHeard = false; // set once the neighbour has sent a hello, only then can its silence count
+    private volatile boolean neighbourUp = true;
+    private final LongAdder packetsReceived = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder packetsSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
 
     /**
      * constructor for an interface
      *
-     * @param sock       - the datagramsocket to use
+     * @param link       - the transport to send and recieve over, it binds to the local address when the
+     *                   interface is opened
      * @param remoteAddr - the remote address to send and recieve from
      * @param remotePrt  - the remote port to send and recieve from
      */
-    Interface(DatagramSocket sock, InetAddress remoteAddr, int remotePrt) {
-        socket = sock;
+    Interface(Transport link, int remoteAddr, int remotePrt) {
+        this(link, remoteAddr, remotePrt, false, 0, 0);
+    }
+
+    /**
+     * constructor for an interface
+     *
+     * @param link       - the transport to send and recieve over, it binds to the local address when the
+     *                   interface is opened
+     * @param remoteAddr - the remote address to send and recieve from
+     * @param remotePrt  - the remote port to send and recieve from
+     * @param summarize  - true to advertise summarized routes through this interface
+     * @param hello      - milliseconds between hellos to the neighbour, 0 for none
+     * @param detect     - the number of hello intervals without a datagram before the neighbour is declared down
+     */
+    Interface(Transport link, int remoteAddr, int remotePrt, boolean summarize, long hello, int detect) {
+        this.summarize = summarize;
+        helloInterval = hello;
+        detectMultiplier = detect;
+        transport = link;
+        ring = new ReceiveRing(link.receiveBuffers(), BUF_SIZE);
         remoteAddress = remoteAddr;
         remotePort = remotePrt;
     }
 
     /**
-     * the main receive thread
+     * starts receiving into the interface's ring, must be called on the scheduler of the owning router
+     *
+     * @param loop      - the scheduler of the owning router
+     * @param onReceive - called on the scheduler whenever datagrams are waiting in the ring
+     * @throws IOException if the transport can't be started
+     */
+    void open(Scheduler loop, Runnable onReceive) throws IOException {
+        transport.open(loop, ring, onReceive);
+    }
+
+    /**
+     * stops or restarts receiving datagrams
+     *
+     * @param paused - true to stop reading
+     */
+    void setPaused(boolean paused) {
+        transport.setPaused(paused);
+    }
+
+    /**
+     * gets the oldest received datagram, call release once it has been handled
+     *
+     * @return the datagram flipped for reading, or null if nothing has been received
+     */
+    ByteBuffer peek() {
+        return ring.peek();
+    }
+
+    /**
+     * hands the buffer of the datagram returned by peek back to the receive ring
      */
-    public void run() {
-        if (socket == null || remoteAddress.toString().equals("0.0.0.0")) return;
-        while (run) {
-            byte[] buf = new byte[BUF_SIZE];
-            DatagramPacket packet = new DatagramPacket(buf, buf.length);
-            try {
-                socket.receive(packet);
-                if (packet.getAddress().equals(remoteAddress) && packet.getPort() == remotePort && packet.getData()[0] == 2) {
-                    newData = true;
-                    received.add(packet);
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    void release() {
+        packetsReceived.increment();
+        bytesReceived.add(ring.peek().limit());
+        ring.release();
+    }
 
-        }
-        socket.close();
+    /**
+     * the number of datagrams that reached the interface but were thrown away unread, because its receive ring and
+     * the link's backlog were full or the interface was paused. a udp link leaves those to the socket buffer, which
+     * drops without telling, so this only counts on in-memory links
+     *
+     * @return the drop count
+     */
+    long drops() {
+        return ring.drops();
     }
 
     /**
      * send a message to the remote port and address
      *
-     * @param data - the data to be sent, ususally a rip response
+     * @param data - the data to be sent from its position to its limit, ususally a rip response
      */
-    public void send(byte[] data) {
+    public void send(ByteBuffer data) {
+        packetsSent.increment();
+        bytesSent.add(data.remaining());
+        transport.send(data);
+    }
 
-        if (socket == null || remoteAddress.toString().equals("0.0.0.0")) return;
-        try {
-            socket.send(new DatagramPacket(data, data.length, remoteAddress, remotePort));
-        } catch (IOException | IllegalArgumentException e) {
-            e.printStackTrace();
-        }
+    /**
+     * the number of datagrams handled from the receive ring
+     */
+    long packetsReceived() {
+        return packetsReceived.sum();
+    }
+
+    /**
+     * the number of bytes handled from the receive ring
+     */
+    long bytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * the number of datagrams sent
+     */
+    long packetsSent() {
+        return packetsSent.sum();
+    }
+
+    /**
+     * the number of bytes sent
+     */
+    long bytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * checks if the interface advertises summarized routes
+     *
+     * @return true if routes are summarized
+     */
+    boolean summarize() {
+        return summarize;
+    }
+
+    /**
+     * the milliseconds between hellos to the neighbour
+     *
+     * @return the interval, 0 if the link sends no hellos
+     */
+    long helloInterval() {
+        return helloInterval;
+    }
+
+    /**
+     * how long the neighbour can go unheard before it is declared down
+     *
+     * @return the detection time in milliseconds
+     */
+    long detectTime() {
+        return helloInterval * detectMultiplier;
+    }
+
+    /**
+     * notes that the neighbour was heard from, which brings it back up if it was down
+     *
+     * @param now - the current scheduler time
+     * @return true if the neighbour was down
+     */
+    boolean heard(long now) {
+        lastHeard = now;
+        if (neighbourUp) return false;
+        neighbourUp = true;
+        return true;
+    }
+
+    /**
+     * notes that the neighbour sends hellos too, so its silence for a detection time means it is down
+     */
+    void helloHeard() {
+        helloHeard = true;
+    }
+
+    /**
+     * checks if the neighbour has sent a hello. one that only sends updates goes quiet for an update period at a
+     * time, longer than a detection time usually is, so it is left to the route timeout instead
+     *
+     * @return true once a hello has arrived
+     */
+    boolean sendsHellos() {
+        return helloHeard;
+    }
+
+    /**
+     * the scheduler time the neighbour was last heard from
+     */
+    long lastHeard() {
+        return lastHeard;
+    }
+
+    /**
+     * checks if the neighbour is believed to be up, it is until its hellos stop
+     *
+     * @return false once the neighbour has been declared down
+     */
+    boolean neighbourUp() {
+        return neighbourUp;
+    }
+
+    /**
+     * declares the neighbour down, until it is heard from again
+     */
+    void neighbourDown() {
+        neighbourUp = false;
     }
 
     /**
@@ -72,7 +227,7 @@ public class Interface implements Runnable {
      * @return remote port
      */
     int getRemotePort() {
-        return socket == null ? 0 : remotePort;
+        return remotePort;
     }
 
     /**
@@ -81,7 +236,16 @@ public class Interface implements Runnable {
      * @return the remote address in octal string format
      */
     String getRemoteAddress() {
-        return socket == null ? "0.0.0.0" : remoteAddress.toString();
+        return dotted(remoteAddress);
+    }
+
+    /**
+     * get the remote address as an int
+     *
+     * @return the remote address
+     */
+    int getRemoteAddressInt() {
+        return remoteAddress;
     }
 
     /**
@@ -90,16 +254,16 @@ public class Interface implements Runnable {
      * @return the local address in octal string format
      */
     public String getLocalAddress() {
-        return socket == null ? "0.0.0.0" : socket.getLocalAddress().getHostAddress();
+        return dotted(transport.localAddress());
     }
 
     /**
-     * get teh local address in bytes
+     * get the local address as an int
      *
-     * @return byte array of the local address
+     * @return the local address
      */
-    public byte[] getLocalAddressBytes() {
-        return socket.getLocalAddress().getAddress();
+    int getLocalAddressInt() {
+        return transport.localAddress();
     }
 
     /**
@@ -108,34 +272,17 @@ public class Interface implements Runnable {
      * @return the local port the interface is bound to
      */
     public int getLocalPort() {
-        return socket == null ? 0 : socket.getLocalPort();
-    }
-
-    /**
-     * checks if there is new data on the receive queue
-     *
-     * @return return the new data sent from other servers
-     */
-    boolean newData() {
-        return newData;
+        return transport.localPort();
     }
 
-    /**
-     * gets the datagram packets from the recieve queue
-     *
-     * @return list of data packets that have been received from the last call of this function
-     */
-    List<DatagramPacket> getData() {
-        List<DatagramPacket> packets = new ArrayList<>(received);
-        received.clear();
-        newData = false;
-        return packets;
+    private static String dotted(int a) {
+        return (a >>> 24) + "." + ((a >> 16) & 0xFF) + "." + ((a >> 8) & 0xFF) + "." + (a & 0xFF);
     }
 
     /**
-     * kill the thread
+     * close the transport
      */
-    void kill() {
-        run = false;
+    void close() {
+        transport.close();
     }
 }
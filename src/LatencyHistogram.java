@@ -0,0 +1,91 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a log-linear histogram of durations in the style of HdrHistogram. values below 32 get a bucket each and every
+ * power of two above that is split into 16 buckets, so any value is recorded to within about 6% in a fixed 960
+ * counters with no allocation. one thread records, any thread may read
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 16;
+    private static final int BUCKETS = SUB_BUCKETS * 60;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private volatile long count = 0;
+    private volatile long total = 0;
+    private volatile long max = 0;
+
+    /**
+     * records a value, only called from the recording thread
+     *
+     * @param value - the duration, negative values count as 0
+     */
+    void record(long value) {
+        value = Math.max(value, 0);
+        int i = bucket(value);
+        counts.lazySet(i, counts.get(i) + 1);
+        total += value;
+        if (value > max) max = value;
+        count++;
+    }
+
+    /**
+     * the number of recorded values
+     */
+    long count() {
+        return count;
+    }
+
+    /**
+     * the largest recorded value
+     */
+    long max() {
+        return max;
+    }
+
+    /**
+     * the mean of the recorded values
+     */
+    double mean() {
+        long n = count;
+        return n == 0 ? 0 : (double) total / n;
+    }
+
+    /**
+     * the value at a percentile, rounded up to the top of its bucket
+     *
+     * @param percentile - the percentile, 0 to 100
+     * @return the value, 0 if nothing has been recorded
+     */
+    long percentile(double percentile) {
+        long n = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) n += snapshot[i] = counts.get(i);
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        for (int i = 0; i < BUCKETS; i++) {
+            rank -= snapshot[i];
+            if (rank <= 0) return Math.min(highest(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * the bucket of a value
+     */
+    private static int bucket(long value) {
+        if (value < 2 * SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 4; // leaves value >>> shift in [16, 32)
+        return SUB_BUCKETS * shift + (int) (value >>> shift);
+    }
+
+    /**
+     * the largest value that lands in a bucket
+     */
+    private static long highest(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * an in-process link between two interfaces of routers running in the same jvm. both ends name each other by the
+ * same address and port a udp link would use, but a send copies the datagram straight into a free buffer of the
+ * peer's receive ring and wakes the peer's scheduler, with no socket, syscall or port behind it. a datagram that
+ * finds the peer's ring full waits in a backlog on the sending end, in order, and the peer has the backlog drained
+ * on the sender's scheduler once it has released buffers. the backlog is a ring of its own, as deep as the peer's
+ * and with buffers that are reused the same way, so a burst deeper than both is dropped and counted in the peer's
+ * receive drops, as a full socket buffer would drop it
+ */
+class MemoryTransport implements Transport {
+
+    private static final int RING_SIZE = 256; // what a burst can hand over before the sender has to queue
+    private static final ConcurrentHashMap<Long, MemoryTransport> endpoints = new ConcurrentHashMap<>();
+
+    private final int localAddress;
+    private final int localPort;
+    private final long local;
+    private final long remote;
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final Runnable wakeup = this::wakeup;
+    private final ReceiveRing backlog = new ReceiveRing(RING_SIZE, RipDecoder.MAX_SIZE); // sends waiting on a full peer
+    private final AtomicBoolean backlogged = new AtomicBoolean(); // set by the sender, cleared by the peer
+    private final Runnable drain = this::drain;
+    private MemoryTransport peer;
+    private volatile boolean open = false;
+    private volatile boolean paused = false;
+    private Scheduler loop;
+    private ReceiveRing ring;
+    private Runnable onReceive;
+
+    /**
+     * constructor for an in-memory link, claims the local endpoint
+     *
+     * @param localAddress  - the local address
+     * @param localPort     - the local port
+     * @param remoteAddress - the address of the peer
+     * @param remotePort    - the port of the peer
+     * @throws IOException if another in-memory link already uses the local endpoint
+     */
+    MemoryTransport(int localAddress, int localPort, int remoteAddress, int remotePort) throws IOException {
+        this.localAddress = localAddress;
+        this.localPort = localPort;
+        local = endpoint(localAddress, localPort);
+        remote = endpoint(remoteAddress, remotePort);
+        if (endpoints.putIfAbsent(local, this) != null) throw new IOException("Address already in use: " + localPort);
+    }
+
+    @Override
+    public void open(Scheduler loop, ReceiveRing ring, Runnable onReceive) {
+        this.loop = loop;
+        this.ring = ring;
+        this.onReceive = onReceive;
+        open = true;
+    }
+
+    @Override
+    public int receiveBuffers() {
+        return RING_SIZE;
+    }
+
+    @Override
+    public void send(ByteBuffer data) {
+        if (peer == null || !peer.open) peer = endpoints.get(remote);
+        if (peer == null) {
+            discard();
+            return;
+        }
+        if (backlog.peek() == null && peer.deliver(data, local)) return;
+        ByteBuffer copy = backlog.claim();
+        if (copy == null) {
+            if (peer.open) peer.ring.drop();
+            return;
+        }
+        copy.put(data.duplicate()).flip();
+        backlog.publish();
+        drain();
+    }
+
+    /**
+     * hands queued datagrams to the peer until its ring is full again, called on the sender's scheduler
+     */
+    private void drain() {
+        ByteBuffer next;
+        while ((next = backlog.peek()) != null) {
+            if (peer == null || !peer.open) {
+                discard(); // the link went down, what was in flight is lost as it would be on a wire
+                return;
+            }
+            if (!peer.deliver(next, local)) {
+                backlogged.set(true);
+                // check again after raising the flag, the peer may have freed everything before it could see it
+                if (!peer.deliver(next, local)) return;
+            }
+            backlog.release();
+        }
+    }
+
+    /**
+     * empties the backlog, called on the sender's scheduler
+     */
+    private void discard() {
+        while (backlog.peek() != null) backlog.release();
+    }
+
+    /**
+     * called on the sender's thread, which is the only producer for this end's ring
+     *
+     * @param data - the datagram, its position is left unchanged
+     * @param from - the endpoint of the sender
+     * @return false if the ring was full and the datagram should be tried again later, true if it was delivered or
+     * thrown away because this end is closed, paused or isn't linked to the sender. what a paused end throws away
+     * counts as a receive drop, since the datagram reached it
+     */
+    private boolean deliver(ByteBuffer data, long from) {
+        if (!open || from != remote) return true;
+        if (paused) {
+            ring.drop();
+            return true;
+        }
+        ByteBuffer buffer = ring.claim();
+        if (buffer == null) return false;
+        int position = data.position();
+        buffer.put(data).flip();
+        data.position(position);
+        ring.publish();
+        if (wakeupPending.compareAndSet(false, true)) loop.execute(wakeup);
+        return true;
+    }
+
+    private void wakeup() {
+        wakeupPending.set(false);
+        onReceive.run();
+        // the buffers just released must be visible before the flag is read, or a sender raising it right now could
+        // miss them and never be drained
+        VarHandle.fullFence();
+        MemoryTransport sender = peer != null && peer.open ? peer : endpoints.get(remote);
+        if (sender != null && sender.backlogged.compareAndSet(true, false)) sender.loop.execute(sender.drain);
+    }
+
+    @Override
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        endpoints.remove(local, this);
+    }
+
+    @Override
+    public int localAddress() {
+        return localAddress;
+    }
+
+    @Override
+    public int localPort() {
+        return localPort;
+    }
+
+    private static long endpoint(int address, int port) {
+        return (address & 0xFFFFFFFFL) << 16 | (port & 0xFFFF);
+    }
+}
@@ -1,40 +1,145 @@
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.net.InetAddress;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 public class NetworkSimulator {
-    private static final String usage = "java -jar rip2sim.jar [-v] file";
-    private static final String CMD = "Commands: list, info [ID], kill (ID), stop [ID], resume [ID], quit, help, ?";
+    private static final String usage = "java -jar rip2sim.jar [-v] [-w routersPerWorker] [-t minMs:maxMs] [-l logIntervalMs] [-p tableDir] [-offheap] [-sim seconds [-seed n] [-f packets]] file...";
+    private static final String CMD = "Commands: list, info [ID], stats [ID], forward [packets] [threads], kill (ID), stop [ID], resume [ID], quit, help, ?";
     private static final ArrayList<Router> routers = new ArrayList<>();
+    private static final ArrayList<EventLoop> workers = new ArrayList<>();
     private static boolean verbose;
+    private static int routersPerWorker = 0; // 0 spreads the routers over one worker per core
+    private static long simulate = 0; // seconds of virtual time to simulate, 0 runs in real time
+    private static long seed = 1;
+    private static long logInterval = 500; // table changes are coalesced and printed this often
+    private static TableLogger logger;
+    private static File tableDir; // routing tables are persisted here when set
+    private static long forwardPackets = 0; // packets forwarded over the tables at the end of a simulation
 
     public static void main(String[] args) {
-        verbose = args[0].contains("-v");
-        Arrays.stream(args)
+        ArrayList<String> files = new ArrayList<>();
+        long[] triggerDelay = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-v":
+                    verbose = true;
+                    break;
+                case "-w":
+                    try {
+                        routersPerWorker = Integer.parseInt(args[++i]);
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        System.err.println(usage);
+                        System.exit(1);
+                    }
+                    break;
+                case "-t":
+                    try {
+                        String[] delay = args[++i].split(":");
+                        triggerDelay = new long[]{Long.parseLong(delay[0]), Long.parseLong(delay[1])};
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        System.err.println(usage);
+                        System.exit(1);
+                    }
+                    break;
+                case "-l":
+                    try {
+                        logInterval = Long.parseLong(args[++i]);
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        System.err.println(usage);
+                        System.exit(1);
+                    }
+                    break;
+                case "-offheap":
+                    Router.setOffHeapTables(true);
+                    break;
+                case "-p":
+                    if (i + 1 == args.length) {
+                        System.err.println(usage);
+                        System.exit(1);
+                    }
+                    tableDir = new File(args[++i]);
+                    break;
+                case "-sim":
+                case "-seed":
+                case "-f":
+                    try {
+                        long value = Long.parseLong(args[i + 1]);
+                        if (args[i].equals("-sim")) simulate = value;
+                        else if (args[i].equals("-seed")) seed = value;
+                        else forwardPackets = value;
+                        i++;
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        System.err.println(usage);
+                        System.exit(1);
+                    }
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+        if (simulate > 0) {
+            // virtual time runs the real RFC timers, and only in-memory links can follow a virtual clock
+            Router.setTimers(RipTimers.RFC);
+            Router.setDefaultTransport("mem");
+        }
+        if (triggerDelay != null) Router.setTriggerDelay(triggerDelay[0], triggerDelay[1]);
+        long loadStart = System.nanoTime();
+        // every file parses into its own router, so they load in parallel, in the order they were given
+        List<File> configs = files.stream()
                 .map(File::new)
-                .flatMap(file -> file.isDirectory() ? Arrays.stream(file.listFiles()) : Stream.of(file))
+                .flatMap(file -> file.isDirectory() ? Arrays.stream(file.listFiles()).sorted() : Stream.of(file))
                 .distinct()
-                .filter(File::exists)
                 .filter(File::isFile)
                 .filter(file -> file.getName().endsWith(".txt"))
+                .collect(Collectors.toList());
+        List<Router> loaded = configs.parallelStream()
                 .map(file -> {
                     try {
-                        System.out.println("initializing node with file: " + file.getName());
-                        return InitializeNode(new Scanner(file));
-                    } catch (FileNotFoundException e) {
+                        List<String> lines = Files.readAllLines(file.toPath());
+                        if (verbose) {
+                            System.out.println("initializing node with file: " + file.getName() + "\n"
+                                    + String.join("\n", lines));
+                        }
+                        return InitializeNode(lines);
+                    } catch (IOException e) {
                         System.err.println(e.getMessage());
                         System.out.println("Ignoring File");
                         return null;
                     }
-                }).forEach(routers::add);
+                })
+                .collect(Collectors.toList());
+        // a file that couldn't be read leaves no router behind, the rest keep their order and their file names
+        List<File> names = new ArrayList<>();
+        for (int i = 0; i < loaded.size(); i++) {
+            if (loaded.get(i) == null) continue;
+            routers.add(loaded.get(i));
+            names.add(configs.get(i));
+        }
+        System.out.println("loaded " + routers.size() + " files in "
+                + (System.nanoTime() - loadStart) / 1_000_000 + " ms");
+        if (tableDir != null) persistTables(names);
 
-        routers.forEach(router -> new Thread(router).start());
+        registerStats();
+        if (simulate > 0) {
+            simulate();
+            return;
+        }
+        logger = new TableLogger(System.out, logInterval, routers.size());
+        IntStream.range(0, routers.size()).forEach(index -> logger.register(routers.get(index), "router ID: " + index));
+        Router.setLogger(logger);
+        logger.start();
+        startWorkers();
 
         Scanner input = new Scanner(System.in);
         boolean running = true;
@@ -48,6 +153,8 @@ public class NetworkSimulator {
                 case "3":
                     if (l.length == 1) {
                         routers.forEach(Router::kill);
+                        workers.forEach(EventLoop::shutdown);
+                        logger.close();
                         running = false;
                     } else if (l.length == 2) {
                         try {
@@ -97,6 +204,29 @@ public class NetworkSimulator {
                     }
                     break;
 
+                case "stats":
+                    if (l.length == 1) {
+                        IntStream.range(0, routers.size()).forEachOrdered(index ->
+                                System.out.println("router ID: " + index + " \t " + routers.get(index).stats().summary()));
+                    } else {
+                        try {
+                            System.out.print(getByID(Integer.parseInt(l[1])).stats().report());
+                        } catch (NumberFormatException | NullPointerException y) {
+                            System.err.println("invalid ID");
+                        }
+                    }
+                    break;
+
+                case "forward":
+                    try {
+                        long packets = l.length > 1 ? Long.parseLong(l[1]) : 1_000_000;
+                        int threads = l.length > 2 ? Integer.parseInt(l[2]) : Runtime.getRuntime().availableProcessors();
+                        System.out.println(new ForwardingEngine(routers).run(packets, Math.max(threads, 1), seed));
+                    } catch (NumberFormatException y) {
+                        System.err.println("Usage: forward [packets] [threads]");
+                    }
+                    break;
+
                 case "help":
                 case "?":
                     System.out.println(CMD);
@@ -110,36 +240,134 @@ public class NetworkSimulator {
         input.close();
     }
 
+    /**
+     * starts the routers on a fixed pool of event loops, each loop runs up to routersPerWorker routers
+     */
+    private static void startWorkers() {
+        int perWorker = routersPerWorker > 0 ? routersPerWorker :
+                Math.max(1, (routers.size() + Runtime.getRuntime().availableProcessors() - 1) /
+                        Runtime.getRuntime().availableProcessors());
+        try {
+            for (int i = 0; i < routers.size(); i++) {
+                if (i % perWorker == 0) {
+                    EventLoop worker = new EventLoop("worker-" + workers.size());
+                    workers.add(worker);
+                    worker.start();
+                }
+                routers.get(i).start(workers.get(workers.size() - 1));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * registers the counters of every router with the platform MBean server as rip2sim:type=Router,id=ID
+     */
+    private static void registerStats() {
+        for (int i = 0; i < routers.size(); i++) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean(routers.get(i).stats(), new ObjectName("rip2sim:type=Router,id=" + i));
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * runs every router on one virtual clock for the simulated time, then prints the final tables
+     */
+    private static void simulate() {
+        DiscreteEventScheduler scheduler = new DiscreteEventScheduler(seed);
+        routers.forEach(router -> router.start(scheduler));
+        long start = System.nanoTime();
+        scheduler.run(simulate * 1000);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        IntStream.range(0, routers.size()).forEachOrdered(index -> {
+            System.out.println("router ID: " + index);
+            routers.get(index).print();
+        });
+        System.out.printf("\nsimulated %d s in %d ms, %d events, seed %d\n",
+                simulate, elapsed, scheduler.processed(), seed);
+        if (forwardPackets > 0) {
+            System.out.println(new ForwardingEngine(routers).run(forwardPackets,
+                    Runtime.getRuntime().availableProcessors(), seed));
+        }
+    }
+
     private static Router getByID(int ID) {
         if (0 > ID || ID >= routers.size()) return null;
         return routers.get(ID);
     }
 
-    private static Router InitializeNode(Scanner config) {
-        String reader;
+    /**
+     * keeps the table of every router in a file named after its config, so a restart with the same directory warm
+     * starts from the tables of the last run
+     *
+     * @param configs - the config files, in the order of the routers
+     */
+    private static void persistTables(List<File> configs) {
+        if (!tableDir.isDirectory() && !tableDir.mkdirs()) {
+            System.err.println("can't create table directory: " + tableDir);
+            return;
+        }
+        for (int i = 0; i < routers.size(); i++) {
+            String name = configs.get(i).getName();
+            try {
+                routers.get(i).persist(new File(tableDir, name.substring(0, name.length() - 4) + ".rip").toPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    static Router InitializeNode(List<String> config) {
         Router router = new Router();
+        ArrayList<String> liner = new ArrayList<>();
 
-        while (config.hasNext()) {
-            reader = config.nextLine();
-            String[] liner = reader.split("\\s+|/");
-            switch (liner[0]) {
+        for (String line : config) {
+            tokens(line, liner);
+            if (liner.isEmpty()) continue;
+            switch (liner.get(0)) {
                 case "LINK:":
-                    router.newInterface(liner[1], liner[2]);
+                    if (liner.size() < 3) break;
+                    router.newInterface(liner.get(1), liner.get(2),
+                            liner.subList(3, liner.size()).toArray(new String[0]));
                     break;
 
                 case "NETWORK:":
                     try {
-                        router.newSubnetEntry(InetAddress.getByName(liner[1]),
-                                Integer.parseInt(liner[2]), (short) -1);
-                    } catch (NumberFormatException | UnknownHostException e) {
+                        router.newSubnetEntry(Router.parseAddress(liner.get(1)),
+                                Integer.parseInt(liner.get(2)), (short) -1);
+                    } catch (NumberFormatException | IndexOutOfBoundsException | UnknownHostException e) {
                         System.err.println(usage);
                         System.exit(1);
                     }
                     break;
             }
-            if (verbose) System.out.println(reader);
         }
-        config.close();
         return router;
     }
+
+    /**
+     * splits a config line on whitespace and slashes, without the regex machinery of String.split
+     *
+     * @param line   - the line to split
+     * @param tokens - cleared and filled with the non empty tokens of the line
+     */
+    private static void tokens(String line, List<String> tokens) {
+        tokens.clear();
+        int start = -1;
+        for (int i = 0; i <= line.length(); i++) {
+            boolean separator = i == line.length() || line.charAt(i) == '/' || Character.isWhitespace(line.charAt(i));
+            if (separator) {
+                if (start >= 0) tokens.add(line.substring(start, i));
+                start = -1;
+            } else if (start < 0) {
+                start = i;
+            }
+        }
+    }
 }
@@ -0,0 +1,348 @@
+import java.util.Arrays;
+
+/**
+ * a path compressed binary trie (patricia trie) of ipv4 prefixes for longest prefix match lookups.
+ * nodes are packed into int pages of 256 nodes each, so a lookup is a short run of array reads with no object
+ * pointers to chase. a big trie also gets a direct indexed first stride over the top 16 bits of the address (DIR-16):
+ * for each of the 65536 /16 blocks it holds the best prefix shorter than 16 bits and the node below which every
+ * longer prefix of the block sits, so a lookup skips the top of the trie and only walks the few nodes inside its
+ * block. values are non negative ints, normally routing table slots. not thread safe, the owning router only
+ * touches it from its event loop, but snapshot() hands out a read only copy any thread can look up in. the pages
+ * are copied on write like the routing table's, so a snapshot only costs the pages changed since the one before
+ */
+public class PrefixTrie {
+
+    static final int NIL = -1;
+    private static final int ROOT = -1; // reference to the root field rather than a child slot
+    private static final int STRIDE = 5; // prefix bits, prefix length, child 0, child 1, value
+    private static final int LENGTH = 1;
+    private static final int CHILD = 2;
+    private static final int VALUE = 4;
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_NODES = 1 << PAGE_SHIFT;
+    private final boolean frozen; // a snapshot, never written
+    private int[][] pages = new int[0][];
+    private long[] copied = new long[0]; // per page, the epoch it was last copied or created in
+    private long epoch = 0; // bumped by every snapshot, a page from an earlier epoch may be shared with one
+    private int root = NIL;
+    private int free = NIL; // released nodes, threaded through child 0
+    private int used = 0;
+    private int size = 0;
+
+    // the first stride, null while the trie is small since it takes 512 kB. per /16 block two ints: the value of its
+    // longest prefix shorter than 16 bits or NIL, and the first node of 16 bits or more on its path or NIL
+    private static final int BLOCKS = 1 << 16;
+    private static final int BLOCK_SHIFT = 10; // blocks per page
+    private static final int DIRECT_MIN = 16384; // about when the trie is as big as the stride, dropped at half
+    private int[][] blocks;
+    private long[] blocksCopied;
+
+    public PrefixTrie() {
+        frozen = false;
+    }
+
+    /**
+     * constructor for a snapshot, takes the pages of a trie as they are
+     *
+     * @param trie - the trie
+     */
+    private PrefixTrie(PrefixTrie trie) {
+        frozen = true;
+        pages = trie.pages.clone();
+        blocks = trie.blocks == null ? null : trie.blocks.clone();
+        root = trie.root;
+        used = trie.used;
+        size = trie.size;
+    }
+
+    /**
+     * finds the longest prefix that contains an address
+     *
+     * @param address - the ipv4 address as an int
+     * @return the value of the most specific matching prefix, or NIL if nothing matches
+     */
+    public int lookup(int address) {
+        int best = NIL;
+        int n = root;
+        if (blocks != null) {
+            int[] page = blocks[address >>> (16 + BLOCK_SHIFT)];
+            int i = (address >>> 16 & (1 << BLOCK_SHIFT) - 1) << 1;
+            best = page[i];
+            n = page[i + 1];
+        }
+        while (n != NIL) {
+            int[] page = pages[n >>> PAGE_SHIFT];
+            int b = (n & PAGE_NODES - 1) * STRIDE;
+            int len = page[b + LENGTH];
+            if (((address ^ page[b]) & mask(len)) != 0) break;
+            if (page[b + VALUE] != NIL) best = page[b + VALUE];
+            if (len == 32) break;
+            n = page[b + CHILD + bit(address, len)];
+        }
+        return best;
+    }
+
+    /**
+     * a read only copy of the trie as it is now, safe to look up in from any thread once it has been handed over
+     * through a volatile write. the pages stay shared until the trie writes them again
+     *
+     * @return the snapshot
+     */
+    PrefixTrie snapshot() {
+        PrefixTrie snapshot = new PrefixTrie(this);
+        epoch++;
+        return snapshot;
+    }
+
+    /**
+     * adds or replaces a prefix
+     *
+     * @param address - the network address, bits past the length are ignored
+     * @param length  - the prefix length, 0 to 32
+     * @param value   - the value for the prefix, not negative
+     * @return the previous value of the prefix or NIL if it is new
+     */
+    public int put(int address, int length, int value) {
+        writing();
+        address &= mask(length);
+        int old = insert(address, length, value);
+        if (blocks != null) {
+            refresh(address, length);
+        } else if (size >= DIRECT_MIN) {
+            blocks = new int[BLOCKS >>> BLOCK_SHIFT][];
+            blocksCopied = new long[blocks.length];
+            for (int p = 0; p < blocks.length; p++) {
+                blocks[p] = new int[2 << BLOCK_SHIFT];
+                blocksCopied[p] = epoch;
+            }
+            refresh(0, 0);
+        }
+        return old;
+    }
+
+    private int insert(int address, int length, int value) {
+        int ref = ROOT;
+        while (true) {
+            int n = get(ref);
+            if (n == NIL) {
+                int leaf = newNode(address, length, value);
+                set(ref, leaf);
+                size++;
+                return NIL;
+            }
+            int nodeAddress = field(n, 0);
+            int nodeLength = field(n, LENGTH);
+            int common = Math.min(Math.min(length, nodeLength), Integer.numberOfLeadingZeros(address ^ nodeAddress));
+            if (common == nodeLength) {
+                if (nodeLength == length) {
+                    int old = field(n, VALUE);
+                    setField(n, VALUE, value);
+                    if (old == NIL) size++;
+                    return old;
+                }
+                ref = n * STRIDE + CHILD + bit(address, nodeLength);
+                continue;
+            }
+
+            // the new prefix branches off above n, either as n's parent or as a sibling under a new branch node
+            int split;
+            if (common == length) {
+                split = newNode(address, length, value);
+            } else {
+                int leaf = newNode(address, length, value);
+                split = newNode(address & mask(common), common, NIL);
+                setField(split, CHILD + bit(address, common), leaf);
+            }
+            setField(split, CHILD + bit(nodeAddress, common), n);
+            set(ref, split);
+            size++;
+            return NIL;
+        }
+    }
+
+    /**
+     * removes a prefix
+     *
+     * @param address - the network address, bits past the length are ignored
+     * @param length  - the prefix length
+     * @return the removed value or NIL if the prefix wasn't in the trie
+     */
+    public int remove(int address, int length) {
+        writing();
+        address &= mask(length);
+        int parent = NIL;
+        int parentRef = ROOT;
+        int ref = ROOT;
+        int n = root;
+        while (n != NIL) {
+            int nodeLength = field(n, LENGTH);
+            if (nodeLength > length || ((address ^ field(n, 0)) & mask(nodeLength)) != 0) return NIL;
+            if (nodeLength == length) break;
+            parent = n;
+            parentRef = ref;
+            ref = n * STRIDE + CHILD + bit(address, nodeLength);
+            n = get(ref);
+        }
+        if (n == NIL || field(n, VALUE) == NIL) return NIL;
+
+        int old = field(n, VALUE);
+        setField(n, VALUE, NIL);
+        size--;
+        // a node without a value is only worth keeping while it branches
+        if (collapse(n, ref) && parent != NIL && field(parent, VALUE) == NIL) collapse(parent, parentRef);
+        if (size < DIRECT_MIN / 2) {
+            blocks = null;
+            blocksCopied = null;
+        } else if (blocks != null) {
+            refresh(address, length);
+        }
+        return old;
+    }
+
+    /**
+     * the number of prefixes in the trie
+     *
+     * @return the prefix count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * removes every prefix
+     */
+    public void clear() {
+        writing();
+        pages = new int[0][];
+        copied = new long[0];
+        root = NIL;
+        free = NIL;
+        used = 0;
+        size = 0;
+        blocks = null;
+        blocksCopied = null;
+    }
+
+    /**
+     * brings the first stride up to date for the /16 blocks a prefix covers, every one of them for a short prefix
+     *
+     * @param address - the network address of the prefix
+     * @param length  - the prefix length
+     */
+    private void refresh(int address, int length) {
+        int first = address >>> 16;
+        int last = (address | ~mask(length)) >>> 16;
+        for (int block = first; block <= last; block++) {
+            int best = NIL;
+            int n = root;
+            while (n != NIL) {
+                int len = field(n, LENGTH);
+                if ((((block << 16) ^ field(n, 0)) & mask(Math.min(len, 16))) != 0) {
+                    n = NIL;
+                } else if (len < 16) {
+                    if (field(n, VALUE) != NIL) best = field(n, VALUE);
+                    n = field(n, CHILD + bit(block << 16, len));
+                } else {
+                    break;
+                }
+            }
+            int p = block >>> BLOCK_SHIFT;
+            if (blocksCopied[p] != epoch) {
+                blocks[p] = blocks[p].clone();
+                blocksCopied[p] = epoch;
+            }
+            int i = (block & (1 << BLOCK_SHIFT) - 1) << 1;
+            blocks[p][i] = best;
+            blocks[p][i + 1] = n;
+        }
+    }
+
+    /**
+     * splices out a node without a value if it has less than two children
+     *
+     * @param n   - the node
+     * @param ref - where the node is referenced from
+     * @return true if the node was removed
+     */
+    private boolean collapse(int n, int ref) {
+        int zero = field(n, CHILD);
+        int one = field(n, CHILD + 1);
+        if (zero != NIL && one != NIL) return false;
+        set(ref, zero != NIL ? zero : one);
+        setField(n, VALUE, NIL);
+        setField(n, CHILD, free);
+        free = n;
+        return true;
+    }
+
+    private int newNode(int address, int length, int value) {
+        int n;
+        if (free != NIL) {
+            n = free;
+            free = field(n, CHILD);
+        } else {
+            int p = used >>> PAGE_SHIFT;
+            if (p == pages.length) {
+                pages = Arrays.copyOf(pages, Math.max(4, p * 2));
+                copied = Arrays.copyOf(copied, pages.length);
+            }
+            if (pages[p] == null) {
+                pages[p] = new int[PAGE_NODES * STRIDE];
+                copied[p] = epoch;
+            }
+            n = used++;
+        }
+        setField(n, 0, address);
+        setField(n, LENGTH, length);
+        setField(n, CHILD, NIL);
+        setField(n, CHILD + 1, NIL);
+        setField(n, VALUE, value);
+        return n;
+    }
+
+    private int field(int n, int field) {
+        return pages[n >>> PAGE_SHIFT][(n & PAGE_NODES - 1) * STRIDE + field];
+    }
+
+    /**
+     * writes a field of a node, copying its page first if a snapshot may share it
+     */
+    private void setField(int n, int field, int value) {
+        int p = n >>> PAGE_SHIFT;
+        if (copied[p] != epoch) {
+            pages[p] = pages[p].clone();
+            copied[p] = epoch;
+        }
+        pages[p][(n & PAGE_NODES - 1) * STRIDE + field] = value;
+    }
+
+    private int get(int ref) {
+        return ref == ROOT ? root : field(ref / STRIDE, ref % STRIDE);
+    }
+
+    private void set(int ref, int n) {
+        if (ref == ROOT) {
+            root = n;
+        } else {
+            setField(ref / STRIDE, ref % STRIDE, n);
+        }
+    }
+
+    private void writing() {
+        if (frozen) throw new IllegalStateException("a trie snapshot is read only");
+    }
+
+    /**
+     * gets a bit of an address counting from the most significant
+     */
+    private static int bit(int address, int index) {
+        return (address >>> (31 - index)) & 1;
+    }
+
+    /**
+     * converts a prefix length to a netmask, 0 gives an empty mask
+     */
+    static int mask(int length) {
+        return length == 0 ? 0 : -1 << (32 - length);
+    }
+}
@@ -0,0 +1,97 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a bounded single producer single consumer ring of preallocated receive buffers, between whatever receives the
+ * datagrams of an interface and the router that handles them. the producer fills the buffer at the tail and publishes
+ * it, the consumer reads from the head and releases it back to the producer, so nothing is allocated or copied per
+ * datagram. buffers are only allocated the first time the producer reaches them, so a long ring costs memory in
+ * proportion to the deepest burst it has seen. a full ring never blocks the producer, it drops and counts the
+ * datagram instead
+ */
+class ReceiveRing {
+
+    private final ByteBuffer[] buffers;
+    private final int bufferSize;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next buffer to consume, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next buffer to fill, written by the producer
+    private final AtomicLong dropped = new AtomicLong();
+    private long headCache = 0; // producer's last look at head
+    private long tailCache = 0; // consumer's last look at tail
+
+    /**
+     * constructor for a ring
+     *
+     * @param capacity   - the number of buffers, rounded up to a power of two
+     * @param bufferSize - the size of each buffer
+     */
+    ReceiveRing(int capacity, int bufferSize) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        buffers = new ByteBuffer[size];
+        this.bufferSize = bufferSize;
+        mask = size - 1;
+    }
+
+    /**
+     * producer side, gets the next free buffer cleared for writing
+     *
+     * @return the buffer or null if the ring is full
+     */
+    ByteBuffer claim() {
+        long t = tail.get();
+        if (t - headCache == buffers.length) {
+            headCache = head.get();
+            if (t - headCache == buffers.length) return null;
+        }
+        int i = (int) (t & mask);
+        if (buffers[i] == null) buffers[i] = ByteBuffer.allocate(bufferSize); // seen by the consumer once published
+        return buffers[i].clear();
+    }
+
+    /**
+     * producer side, hands the claimed buffer to the consumer, it should be flipped for reading
+     */
+    void publish() {
+        tail.lazySet(tail.get() + 1);
+    }
+
+    /**
+     * producer side, counts a datagram that was thrown away because there was nowhere to put it, a full ring or a
+     * full backlog in front of it, or a paused receiver
+     */
+    void drop() {
+        dropped.incrementAndGet();
+    }
+
+    /**
+     * consumer side, gets the oldest published buffer without removing it. the producer's position is only re-read
+     * once everything seen so far has been consumed, so a burst is drained as one batch
+     *
+     * @return the buffer or null if the ring is empty
+     */
+    ByteBuffer peek() {
+        long h = head.get();
+        if (h == tailCache) {
+            tailCache = tail.get();
+            if (h == tailCache) return null;
+        }
+        return buffers[(int) (h & mask)];
+    }
+
+    /**
+     * consumer side, gives the buffer returned by peek back to the producer
+     */
+    void release() {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * the number of datagrams counted by drop
+     *
+     * @return the drop count
+     */
+    long drops() {
+        return dropped.get();
+    }
+}
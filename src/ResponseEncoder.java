@@ -0,0 +1,178 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * builds the rip responses of a router. the full response is assembled from the stored entries of a table snapshot
+ * once per version into a reusable direct buffer, then every broadcast reuses it until a new version is published. an outgoing
+ * interface only patches the metrics of the routes learned through it to 16 (poison reverse) before sending, and
+ * puts them back afterwards. triggered updates are encoded the same way from just the changed rows. a response is
+ * laid out as back to back datagrams of at most 25 entries, each with its own header, and an interface sends all of
+ * them in one go. only used from the router's event loop
+ */
+class ResponseEncoder {
+
+    static final int HEADER_SIZE = RipDecoder.HEADER_SIZE;
+    static final int ENTRY_SIZE = RipDecoder.ENTRY_SIZE;
+    static final int MAX_ENTRIES = RipDecoder.MAX_ENTRIES;
+    static final int SEGMENT_SIZE = RipDecoder.MAX_SIZE;
+    private static final int METRIC_OFFSET = 16;
+    private static final int INFINITY = 16;
+
+    private ByteBuffer response = ByteBuffer.allocateDirect(2 * SEGMENT_SIZE);
+    private int[] hops = new int[32]; // next hop of each encoded entry
+    private int[] metrics = new int[32]; // advertised metric of each encoded entry
+    private int count = 0;
+    private long version = -1;
+
+    /**
+     * rebuilds the cached response if the snapshot is of a different version than the one it was last built from
+     *
+     * @param table - the snapshot of the routing table
+     */
+    void prepare(RouteSnapshot table) {
+        if (table.version() == version) return;
+        begin(table.size());
+        for (int slot = 0; slot < table.limit(); slot++) {
+            if (table.inUse(slot)) append(table, slot);
+        }
+        if (count == 0) header(); // an empty table is still advertised
+        version = table.version();
+    }
+
+    /**
+     * builds a response of only some of the rows, for a triggered update
+     *
+     * @param table   - the snapshot of the routing table
+     * @param changed - the slots to encode, slots no longer in use are skipped
+     */
+    void prepare(RouteSnapshot table, BitSet changed) {
+        begin(changed.cardinality());
+        for (int slot = changed.nextSetBit(0); slot >= 0; slot = changed.nextSetBit(slot + 1)) {
+            if (table.inUse(slot)) append(table, slot);
+        }
+        version = -1;
+    }
+
+    /**
+     * rebuilds the cached response from the summarized routes if the snapshot is of a different version than the one
+     * it was last built from, an encoder used for summaries shouldn't be used for anything else
+     *
+     * @param table   - the snapshot of the routing table
+     * @param summary - the summarizer to merge the routes with
+     */
+    void prepare(RouteSnapshot table, RouteSummarizer summary) {
+        if (table.version() == version) return;
+        summary.summarize(table);
+
+        // any row through a next hop has that hop's route tag and next hop fields, a summary borrows them
+        int maxHop = RouteTable.LOCAL;
+        for (int i = 0; i < summary.count; i++) maxHop = Math.max(maxHop, summary.hop[i]);
+        int[] template = new int[maxHop + 2];
+        Arrays.fill(template, RouteTable.NONE);
+        for (int slot = 0; slot < table.limit(); slot++) {
+            if (table.inUse(slot) && table.hop(slot) <= maxHop && template[table.hop(slot) + 1] == RouteTable.NONE) {
+                template[table.hop(slot) + 1] = slot;
+            }
+        }
+
+        begin(summary.count);
+        for (int i = 0; i < summary.count; i++) {
+            if (count % MAX_ENTRIES == 0) header();
+            int position = response.position();
+            int slot = template[summary.hop[i] + 1];
+            if (slot != RouteTable.NONE) {
+                table.copyEntry(slot, response);
+            } else {
+                response.putShort((short) RipDecoder.AF_INET).putShort((short) 0).putLong(0).putLong(0);
+            }
+            response.putInt(position + 4, summary.address[i]);
+            response.putInt(position + 8, PrefixTrie.mask(summary.length[i]));
+            response.putInt(position + METRIC_OFFSET, summary.metric[i]);
+            hops[count] = summary.hop[i];
+            metrics[count] = summary.metric[i];
+            count++;
+        }
+        if (count == 0) header();
+        version = table.version();
+    }
+
+    /**
+     * the number of entries in the prepared response
+     *
+     * @return the entry count
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * resets the response to just the header, growing the buffers to fit
+     *
+     * @param entries - the most entries that will be appended
+     */
+    private void begin(int entries) {
+        int needed = ((entries + MAX_ENTRIES - 1) / MAX_ENTRIES + 1) * HEADER_SIZE + entries * ENTRY_SIZE;
+        if (response.capacity() < needed) response = ByteBuffer.allocateDirect(Math.max(needed, response.capacity() * 2));
+        if (hops.length < entries) {
+            hops = Arrays.copyOf(hops, Math.max(entries, hops.length * 2));
+            metrics = Arrays.copyOf(metrics, hops.length);
+        }
+
+        response.clear();
+        count = 0;
+    }
+
+    private void append(RouteSnapshot table, int slot) {
+        if (count % MAX_ENTRIES == 0) header();
+        table.copyEntry(slot, response);
+        hops[count] = table.hop(slot);
+        metrics[count] = table.metric(slot);
+        count++;
+    }
+
+    /**
+     * sends the cached response through an interface with poison reverse applied, call prepare first
+     *
+     * @param inter - the interface to send through
+     * @param hop   - the index of the interface
+     */
+    void send(Interface inter, int hop) {
+        poison(hop, true);
+        int end = response.position();
+        for (int start = 0; start < end; start += SEGMENT_SIZE) {
+            response.limit(Math.min(start + SEGMENT_SIZE, end)).position(start);
+            inter.send(response);
+        }
+        response.limit(response.capacity()).position(end);
+        poison(hop, false);
+    }
+
+    /**
+     * writes the rip header that starts each datagram
+     */
+    private void header() {
+        response.put((byte) 2); // command response
+        response.put((byte) 2); // version
+        response.putShort((short) 0); // zero padding
+    }
+
+    /**
+     * sets or restores the metric of every entry learned through an interface
+     */
+    private void poison(int hop, boolean infinite) {
+        for (int i = 0; i < count; i++) {
+            if (hops[i] == hop) response.putInt(offset(i) + METRIC_OFFSET, infinite ? INFINITY : metrics[i]);
+        }
+    }
+
+    /**
+     * the position of an entry in the response
+     *
+     * @param i - the index of the entry
+     * @return the offset of the entry from the start of the buffer
+     */
+    private static int offset(int i) {
+        return (i / MAX_ENTRIES) * SEGMENT_SIZE + HEADER_SIZE + (i % MAX_ENTRIES) * ENTRY_SIZE;
+    }
+}
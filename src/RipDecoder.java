@@ -0,0 +1,128 @@
+import java.nio.ByteBuffer;
+
+/**
+ * a flyweight over a received rip message. the fields of the current route entry are read in place from the
+ * receive buffer as ints, so decoding allocates nothing. one decoder is reused for every message a router handles
+ */
+class RipDecoder {
+
+    static final int HEADER_SIZE = 4;
+    static final int ENTRY_SIZE = 20;
+    static final int MAX_ENTRIES = 25; // per datagram, keeps it inside RIP's 512 byte limit
+    static final int MAX_SIZE = HEADER_SIZE + MAX_ENTRIES * ENTRY_SIZE;
+    static final int AF_INET = 2;
+    static final int HELLO = 0x7F; // a private command, a keepalive between neighbours that carries no entries
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int limit;
+
+    /**
+     * points the decoder at a message, positioned before the first entry
+     *
+     * @param message - the message, from index 0 to its limit
+     * @return this decoder
+     */
+    RipDecoder wrap(ByteBuffer message) {
+        buffer = message;
+        limit = message.limit();
+        offset = HEADER_SIZE - ENTRY_SIZE;
+        return this;
+    }
+
+    /**
+     * the command of the message, 1 for a request and 2 for a response
+     *
+     * @return the command
+     */
+    int command() {
+        return buffer.get(0) & 0xFF;
+    }
+
+    /**
+     * moves to the next route entry, a trailing partial entry is ignored
+     *
+     * @return false once there are no more entries
+     */
+    boolean next() {
+        offset += ENTRY_SIZE;
+        return offset + ENTRY_SIZE <= limit;
+    }
+
+    /**
+     * the address family identifier of the current entry
+     *
+     * @return the family, AF_INET for ipv4
+     */
+    int family() {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    /**
+     * the route tag of the current entry, used to carry the port of the next hop
+     *
+     * @return the unsigned 16 bit route tag
+     */
+    int routeTag() {
+        return buffer.getShort(offset + 2) & 0xFFFF;
+    }
+
+    /**
+     * the network address of the current entry
+     *
+     * @return the ipv4 address as an int
+     */
+    int address() {
+        return buffer.getInt(offset + 4);
+    }
+
+    /**
+     * the subnet mask of the current entry
+     *
+     * @return the mask as an int
+     */
+    int mask() {
+        return buffer.getInt(offset + 8);
+    }
+
+    /**
+     * the subnet mask of the current entry as a CIDR prefix length
+     *
+     * @return the prefix length
+     */
+    int prefixLength() {
+        return SubmaskToCIDR(mask());
+    }
+
+    /**
+     * the next hop of the current entry
+     *
+     * @return the ipv4 address as an int
+     */
+    int nextHop() {
+        return buffer.getInt(offset + 12);
+    }
+
+    /**
+     * the metric of the current entry
+     *
+     * @return the metric
+     */
+    int metric() {
+        return buffer.getInt(offset + 16);
+    }
+
+    /**
+     * this was taken from Hacker's delight section 5.1 after being pointed to it from a stack overflow post that
+     * recommended it as the fastest way to convert subnet mask to cidr.
+     * How do you properly cite in code
+     */
+    static int SubmaskToCIDR(int x) {
+        x = x - ((x >>> 1) & 0x55555555);
+        x = (x & 0x33333333) + ((x >>> 2) & 0x33333333);
+        x = (x + (x >>> 4)) & 0x0F0F0F0F;
+        x = x + (x >>> 8);
+        x = x + (x >>> 16);
+        return x & 0x0000003F;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * the timer settings of the routers, all in milliseconds
+ */
+class RipTimers {
+
+    /**
+     * the timers of RFC 2453, for runs on a virtual clock
+     */
+    static final RipTimers RFC = new RipTimers(30000, 5000, 180000, 120000, 5000, 1000, 5000);
+
+    /**
+     * the RFC timers scaled down so a simulation in real time converges in seconds
+     */
+    static final RipTimers SCALED = new RipTimers(1000, 166, 5000, 3000, 250, 50, 200);
+
+    final long update; // between full table broadcasts
+    final long jitter; // each broadcast is moved by up to this much either way so routers don't fall into step
+    final long timeout; // a route not heard from for this long becomes unreachable
+    final long garbage; // an unreachable route is deleted after this long
+    final long tick; // the granularity of the timeout and garbage collection timers
+    final long triggerMin; // the shortest hold down before a triggered update
+    final long triggerMax; // the longest hold down before a triggered update
+
+    /**
+     * constructor for a set of timers
+     *
+     * @param update     - the time between full table broadcasts
+     * @param jitter     - the most a broadcast is moved from the update period either way, RFC 2453 section 3.8
+     *                   uses 5 of 30 seconds
+     * @param timeout    - the time after which a route that hasn't been refreshed times out
+     * @param garbage    - the time an unreachable route is kept before it is deleted
+     * @param tick       - the granularity of the timeout and garbage collection timers
+     * @param triggerMin - the shortest hold down before a triggered update
+     * @param triggerMax - the longest hold down before a triggered update
+     */
+    RipTimers(long update, long jitter, long timeout, long garbage, long tick, long triggerMin, long triggerMax) {
+        this.update = update;
+        this.jitter = Math.min(jitter, update / 2);
+        this.timeout = timeout;
+        this.garbage = garbage;
+        this.tick = tick;
+        this.triggerMin = triggerMin;
+        this.triggerMax = Math.max(triggerMin, triggerMax);
+    }
+
+    /**
+     * copies these timers with a different triggered update hold down
+     *
+     * @param min - the shortest hold down
+     * @param max - the longest hold down
+     * @return the new timers
+     */
+    RipTimers withTriggerDelay(long min, long max) {
+        return new RipTimers(update, jitter, timeout, garbage, tick, min, max);
+    }
+}
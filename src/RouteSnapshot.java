@@ -0,0 +1,220 @@
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * an immutable copy of a routing table at one version. the record pages are taken as they are, free slots included,
+ * so a row keeps its slot number and two snapshots of the same table can be compared slot by slot, and a page that
+ * didn't change between two snapshots is the same page in both. the pages are in the same kind of memory as the
+ * table, on or off the heap. a router publishes a new snapshot after every batch of
+ * changes, together with a snapshot of its forwarding trie, and anything that only reads the table, printing,
+ * advertising, forwarding or another thread, works from the latest one without locking. off the heap the table
+ * reuses the pages of a snapshot once a newer one is taken, unless it is pinned, so a reader that may still hold it
+ * after that, on another thread, pins it first (Router.acquire)
+ */
+class RouteSnapshot {
+
+    static final RouteSnapshot EMPTY = new RouteSnapshot(-1, 0, 0, new ByteBuffer[0], -1, new int[0], null);
+    private static final int ENTRY_SIZE = RouteTable.ENTRY_SIZE;
+    private static final int SHIFT = RouteTable.PAGE_SHIFT;
+
+    private final long version;
+    private final int size;
+    private final int limit;
+    private final ByteBuffer[] pages; // only read with absolute gets, so threads can share them
+    private final long previous;
+    private final int[] changed;
+    private final PrefixTrie forwarding; // the reachable rows by prefix, or null
+    private final AtomicInteger pins = new AtomicInteger(); // readers holding on to it, -1 once its pages are reused
+
+    /**
+     * constructor for a snapshot, the pages are never written again
+     *
+     * @param version    - the version of the table
+     * @param size       - the number of rows
+     * @param limit      - the number of slots
+     * @param pages      - the RouteTable record pages holding the slots
+     * @param previous   - the version of the snapshot the table took before this one
+     * @param changed    - the slots that changed since that snapshot, in order
+     * @param forwarding - a read only trie of the reachable rows by slot, taken at the same version, or null
+     */
+    RouteSnapshot(long version, int size, int limit, ByteBuffer[] pages, long previous, int[] changed,
+                  PrefixTrie forwarding) {
+        this.version = version;
+        this.size = size;
+        this.limit = limit;
+        this.pages = pages;
+        this.previous = previous;
+        this.changed = changed;
+        this.forwarding = forwarding;
+    }
+
+    /**
+     * keeps the table from reusing the pages of the snapshot until it is unpinned, from any thread
+     *
+     * @return false if the table has already reclaimed the snapshot, it mustn't be read then
+     */
+    boolean pin() {
+        int n;
+        do {
+            n = pins.get();
+            if (n < 0) return false;
+        } while (!pins.compareAndSet(n, n + 1));
+        return true;
+    }
+
+    /**
+     * gives back a pin
+     */
+    void unpin() {
+        pins.decrementAndGet();
+    }
+
+    /**
+     * called by the table once a newer snapshot is out, marks the snapshot reclaimed unless it is pinned
+     *
+     * @return true if nobody holds it and it can never be pinned again
+     */
+    boolean reclaim() {
+        return pins.compareAndSet(0, -1);
+    }
+
+    /**
+     * the version of the table the snapshot was taken at
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * the version of the snapshot the table took before this one
+     */
+    long previous() {
+        return previous;
+    }
+
+    /**
+     * the slots that changed since the snapshot the table took before this one, in order and without repeats. a
+     * reader that has seen that snapshot needs to look at no other slot
+     */
+    int[] changed() {
+        return changed;
+    }
+
+    /**
+     * the number of rows
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * the upper bound of the slots in use, iterate slots below this and skip the ones not in use
+     */
+    int limit() {
+        return limit;
+    }
+
+    /**
+     * finds the reachable row with the longest prefix that contains an address
+     *
+     * @param address - the ipv4 address as an int
+     * @return the slot of the row, PrefixTrie.NIL if no reachable route matches or the snapshot was taken without a
+     * forwarding trie
+     */
+    int lookup(int address) {
+        return forwarding == null ? PrefixTrie.NIL : forwarding.lookup(address);
+    }
+
+    /**
+     * checks if a slot holds a row, slots past the limit never do
+     */
+    boolean inUse(int slot) {
+        return slot < limit && pages[slot >>> SHIFT].getShort(RouteTable.offset(slot)) != 0;
+    }
+
+    /**
+     * the network address of a row
+     */
+    int address(int slot) {
+        return pages[slot >>> SHIFT].getInt(RouteTable.offset(slot) + 4);
+    }
+
+    /**
+     * the prefix length of a row
+     */
+    int prefix(int slot) {
+        return Integer.bitCount(pages[slot >>> SHIFT].getInt(RouteTable.offset(slot) + 8));
+    }
+
+    /**
+     * the metric (cost/weight) of a row
+     */
+    int metric(int slot) {
+        return pages[slot >>> SHIFT].getInt(RouteTable.offset(slot) + 16);
+    }
+
+    /**
+     * the index of the next hop interface of a row, RouteTable.LOCAL for a directly connected network
+     */
+    int hop(int slot) {
+        return pages[slot >>> SHIFT].getInt(RouteTable.offset(slot) + RouteTable.HOP);
+    }
+
+    /**
+     * copies the rip entry of a row
+     *
+     * @param slot - the row
+     * @param dst  - the buffer to append the 20 byte entry to
+     */
+    void copyEntry(int slot, ByteBuffer dst) {
+        ByteBuffer records = pages[slot >>> SHIFT];
+        if (records.hasArray()) {
+            dst.put(records.array(), records.arrayOffset() + RouteTable.offset(slot), ENTRY_SIZE);
+        } else {
+            dst.put(dst.position(), records, RouteTable.offset(slot), ENTRY_SIZE);
+            dst.position(dst.position() + ENTRY_SIZE);
+        }
+    }
+
+    /**
+     * finds the slots that differ from an earlier snapshot of the same table. a slot in use in only one of them was
+     * added or removed, a slot in use in both was changed, or reused for another prefix if the prefixes differ. pages
+     * both snapshots share are skipped whole
+     *
+     * @param previous - the earlier snapshot
+     * @return the differing slots
+     */
+    BitSet diff(RouteSnapshot previous) {
+        int slots = Math.max(limit(), previous.limit());
+        BitSet changed = new BitSet(slots);
+        if (previous.version == version) return changed;
+        for (int slot = 0; slot < slots; slot++) {
+            int p = slot >>> SHIFT;
+            if (p < pages.length && p < previous.pages.length && pages[p] == previous.pages[p]) {
+                slot |= RouteTable.PAGE_SLOTS - 1;
+                continue;
+            }
+            boolean now = inUse(slot);
+            boolean before = previous.inUse(slot);
+            if (now != before) {
+                changed.set(slot);
+            } else if (now && !sameRoute(previous, slot)) {
+                changed.set(slot);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * compares the rip entry and next hop interface of a slot in use in both snapshots, the time it was heard aside
+     */
+    private boolean sameRoute(RouteSnapshot previous, int slot) {
+        ByteBuffer records = pages[slot >>> SHIFT];
+        ByteBuffer before = previous.pages[slot >>> SHIFT];
+        int r = RouteTable.offset(slot);
+        return records.getLong(r) == before.getLong(r)
+                && records.getLong(r + 8) == before.getLong(r + 8)
+                && records.getLong(r + 16) == before.getLong(r + 16);
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.Arrays;
+
+/**
+ * merges the reachable routes of a snapshot into the fewest prefixes that cover exactly the same addresses, for
+ * interfaces that advertise summaries. only routes through the same next hop are merged: a prefix inside another
+ * is dropped and two halves of the same supernet become the supernet, repeatedly, with the worst metric of the
+ * routes merged. nothing is ever claimed that isn't in the table, so two prefixes with a gap between them stay
+ * apart. unreachable routes are passed through as they are so they can still be poisoned, and a summary that
+ * disappears is advertised once with metric 16 so neighbors don't keep it until it times out. only used from the
+ * router's scheduler
+ */
+class RouteSummarizer {
+
+    private static final int INFINITY = 16;
+
+    int[] address = new int[16];
+    int[] length = new int[16];
+    int[] metric = new int[16];
+    int[] hop = new int[16];
+    int count = 0;
+    private int[] parts = new int[16]; // how many routes went into each result
+
+    private long[] sorted = new long[16];
+    private long[] advertised = new long[0]; // sorted keys of the summaries in the last result
+    private long[] current = new long[16];
+    private int currentCount = 0;
+    private long version = -1;
+
+    /**
+     * summarizes a snapshot into the result arrays, unless it is the snapshot of the last call
+     *
+     * @param table - the snapshot of the routing table
+     */
+    void summarize(RouteSnapshot table) {
+        if (table.version() == version) return;
+        version = table.version();
+        count = 0;
+        currentCount = 0;
+
+        // sort by next hop, then address, then shortest prefix first, so covering prefixes come before what they cover
+        int n = 0;
+        if (sorted.length < table.size()) sorted = new long[Math.max(table.size(), sorted.length * 2)];
+        for (int slot = 0; slot < table.limit(); slot++) {
+            if (!table.inUse(slot)) continue;
+            if (table.metric(slot) >= INFINITY) {
+                add(table.address(slot), table.prefix(slot), INFINITY, table.hop(slot));
+            } else {
+                sorted[n++] = pack(table.hop(slot), table.address(slot), table.prefix(slot)) << 5 | table.metric(slot);
+            }
+        }
+        Arrays.sort(sorted, 0, n);
+
+        int groupStart = count;
+        int group = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            long entry = sorted[i];
+            int h = (int) (entry >>> 43) - 1;
+            int a = (int) (entry >>> 11);
+            int len = (int) (entry >>> 5) & 0x3F;
+            int m = (int) entry & 0x1F;
+            if (h != group) {
+                finishGroup(groupStart);
+                group = h;
+                groupStart = count;
+            }
+            // inside the last summary of this group, just keep the worst metric
+            if (count > groupStart && covers(address[count - 1], length[count - 1], a)) {
+                metric[count - 1] = Math.max(metric[count - 1], m);
+                parts[count - 1]++;
+                continue;
+            }
+            add(a, len, m, h);
+            // merge with the other half of the supernet for as long as it is there
+            while (count - 1 > groupStart && siblings(count - 2, count - 1)) {
+                count--;
+                length[count - 1]--;
+                metric[count - 1] = Math.max(metric[count - 1], metric[count]);
+                parts[count - 1] += parts[count];
+            }
+        }
+        finishGroup(groupStart);
+
+        // withdraw what was summarized last time and isn't any more
+        Arrays.sort(current, 0, currentCount);
+        for (long key : advertised) {
+            if (Arrays.binarySearch(current, 0, currentCount, key) < 0) {
+                add((int) (key >>> 6), (int) key & 0x3F, INFINITY, (int) (key >>> 38) - 1);
+            }
+        }
+        advertised = Arrays.copyOf(current, currentCount);
+    }
+
+    /**
+     * notes the summaries of the group that just ended, the results made from more than one route
+     */
+    private void finishGroup(int groupStart) {
+        for (int i = groupStart; i < count; i++) {
+            if (currentCount == current.length) current = Arrays.copyOf(current, currentCount * 2);
+            if (parts[i] > 1) current[currentCount++] = pack(hop[i], address[i], length[i]);
+        }
+    }
+
+    private void add(int a, int len, int m, int h) {
+        if (count == address.length) {
+            int capacity = count * 2;
+            address = Arrays.copyOf(address, capacity);
+            length = Arrays.copyOf(length, capacity);
+            metric = Arrays.copyOf(metric, capacity);
+            hop = Arrays.copyOf(hop, capacity);
+            parts = Arrays.copyOf(parts, capacity);
+        }
+        address[count] = a;
+        length[count] = len;
+        metric[count] = m;
+        hop[count] = h;
+        parts[count] = 1;
+        count++;
+    }
+
+    /**
+     * checks if two consecutive results are the lower and upper half of the same supernet
+     */
+    private boolean siblings(int low, int high) {
+        int len = length[low];
+        if (len == 0 || length[high] != len) return false;
+        int bit = 1 << (32 - len);
+        return (address[low] & bit) == 0 && address[high] == (address[low] | bit);
+    }
+
+    private static boolean covers(int a, int len, int b) {
+        return ((a ^ b) & PrefixTrie.mask(len)) == 0;
+    }
+
+    /**
+     * packs a next hop and prefix so they sort by next hop then address then length
+     */
+    private static long pack(int hop, int address, int length) {
+        return (long) (hop + 1) << 38 | (address & 0xFFFFFFFFL) << 6 | length;
+    }
+}
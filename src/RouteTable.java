@@ -0,0 +1,511 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * the routing table of a router. every row is a fixed 32 byte record, its 20 byte rip entry followed by the index of
+ * its next hop interface and the time it was last heard, and rows are looked up by a packed (address << 8 | prefix
+ * length) key in an open addressed index of longs that also carry the slot of the row. a slot stays the same for as
+ * long as its row is in the table, so other structures can hold on to it. the records live in fixed pages of
+ * PAGE_SLOTS slots that are copied on write: a snapshot shares every page with the table, and the first write to a
+ * page after a snapshot copies that page alone, so a batch of changes costs the pages it touched rather than the
+ * whole table. only the time a row was last heard is written in place, a snapshot never shows it. the pages and the
+ * index are either byte buffers on the heap or direct buffers off it, so a big table in off heap mode is memory the
+ * garbage collector never looks into. off the heap the pages the table copies away from are reused rather than left
+ * to the collector: a page goes back to the table once every snapshot holding it has been replaced by a newer one
+ * and is unpinned, so a snapshot is only safe to read past the next one while pinned. not thread safe
+ */
+public class RouteTable {
+
+    static final int NONE = -1; // no slot
+    static final int LOCAL = -1; // hop of a directly connected network
+    static final int ENTRY_SIZE = RipDecoder.ENTRY_SIZE;
+    static final int RECORD_SIZE = 32;
+    static final int HOP = ENTRY_SIZE; // offset of the next hop interface in a record
+    static final int TIMESTAMP = HOP + 4; // offset of the last heard time in a record
+    static final int PAGE_SHIFT = 8;
+    static final int PAGE_SLOTS = 1 << PAGE_SHIFT; // slots in a page of records, 8 kB of them
+    static final int PAGE_SIZE = PAGE_SLOTS * RECORD_SIZE;
+    private static final long EMPTY = -1L; // never a valid bucket, keys only use 40 bits
+    private static final int SLOT_BITS = 24; // the low bits of a bucket hold the slot
+    private static final int MAX_SLOTS = 1 << SLOT_BITS;
+
+    private final boolean offHeap;
+
+    // the index, linear probing from the hash of the key, each bucket is key << SLOT_BITS | slot
+    private ByteBuffer index;
+    private int mask;
+
+    // the rows, a free slot has address family 0 and the next free slot in place of its hop
+    private ByteBuffer[] pages = new ByteBuffer[0];
+    private long[] copied = new long[0]; // the epoch each page was made in, one from an earlier epoch is shared
+    private long epoch = 0; // bumped by every snapshot
+
+    // off the heap, the snapshots that may still be read, oldest first: the newest and any older one that is pinned
+    private RouteSnapshot[] readable = new RouteSnapshot[4];
+    private long[] readableEpoch = new long[4]; // the epoch each one was taken in
+    private int readables = 0;
+    // and the pages copied away from, each with the epochs of the first and the last snapshot holding it
+    private ByteBuffer[] retired = new ByteBuffer[16];
+    private long[] retiredFirst = new long[16];
+    private long[] retiredLast = new long[16];
+    private int retirements = 0;
+    private ByteBuffer[] spare = new ByteBuffer[16]; // pages no snapshot can read any more, ready to be copied into
+    private int spares = 0;
+    private int copies = 0; // pages copied since the last snapshot, about what the next batch will want spare
+
+    // the slots whose route changed since the last snapshot, possibly more than once, handed to the next snapshot
+    private int[] changed = new int[16];
+    private int changes = 0;
+    private long snapshotVersion = RouteSnapshot.EMPTY.version(); // the version of the last snapshot
+    private int freeSlot = NONE;
+    private int used = 0;
+    private int size = 0;
+    private long version = 0;
+
+    // the local (address, port) of each next hop interface, advertised in the next hop and route tag fields
+    private int[] hopAddress = new int[0];
+    private int[] hopPort = new int[0];
+
+    /**
+     * constructor for an empty routing table on the heap
+     *
+     * @param capacity - the number of rows to size the table for, it grows as needed
+     */
+    RouteTable(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * constructor for an empty routing table
+     *
+     * @param capacity - the number of rows to size the index for, it grows as needed
+     * @param offHeap  - true to keep the pages and the index in direct buffers
+     */
+    RouteTable(int capacity, boolean offHeap) {
+        this.offHeap = offHeap;
+        int buckets = Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1) << 1;
+        index = newIndex(buckets);
+        mask = buckets - 1;
+    }
+
+    /**
+     * sets the local endpoint advertised for routes through a next hop interface, call before adding its routes
+     *
+     * @param hop     - the index of the interface
+     * @param address - the local address of the interface
+     * @param port    - the local port of the interface
+     */
+    void defineHop(int hop, int address, int port) {
+        if (hop >= hopAddress.length) {
+            hopAddress = Arrays.copyOf(hopAddress, hop + 1);
+            hopPort = Arrays.copyOf(hopPort, hop + 1);
+        }
+        hopAddress[hop] = address;
+        hopPort[hop] = port;
+    }
+
+    /**
+     * packs a prefix into a table key
+     *
+     * @param address - the network address
+     * @param prefix  - the prefix length
+     * @return the key
+     */
+    static long key(int address, int prefix) {
+        return (address & 0xFFFFFFFFL) << 8 | prefix;
+    }
+
+    /**
+     * finds the slot of a prefix
+     *
+     * @param address - the network address
+     * @param prefix  - the prefix length
+     * @return the slot or NONE if the prefix isn't in the table
+     */
+    int find(int address, int prefix) {
+        long key = key(address, prefix);
+        long bucket;
+        for (int i = hash(key) & mask; (bucket = index.getLong(i << 3)) != EMPTY; i = (i + 1) & mask) {
+            if (bucket >>> SLOT_BITS == key) return (int) bucket & (MAX_SLOTS - 1);
+        }
+        return NONE;
+    }
+
+    /**
+     * adds a prefix that isn't in the table yet
+     *
+     * @param address   - the network address
+     * @param prefix    - the prefix length
+     * @param metric    - the cost of the route
+     * @param hop       - the index of the next hop interface or LOCAL
+     * @param timestamp - when the route was last heard
+     * @return the slot of the new row
+     */
+    int add(int address, int prefix, int metric, int hop, long timestamp) {
+        if ((size + 1) * 2 > mask + 1) growIndex();
+        int slot;
+        if (freeSlot != NONE) {
+            slot = freeSlot;
+            freeSlot = hop(slot);
+        } else {
+            slot = newSlot();
+        }
+        long key = key(address, prefix);
+        int i = hash(key) & mask;
+        while (index.getLong(i << 3) != EMPTY) i = (i + 1) & mask;
+        index.putLong(i << 3, key << SLOT_BITS | slot);
+
+        ByteBuffer records = writable(slot);
+        int r = offset(slot);
+        records.putShort(r, (short) RipDecoder.AF_INET); // family address identifier, 2 for IPv4 no other protocols supported
+        records.putInt(r + 4, address); // internet address, 4 bytes
+        records.putInt(r + 8, CIDRToSubmask(prefix)); // netMask, 4 bytes
+        records.putLong(r + TIMESTAMP, timestamp);
+        encode(slot, metric, hop);
+        size++;
+        version++;
+        changed(slot);
+        return slot;
+    }
+
+    /**
+     * replaces the route of a row, a route that only had its timestamp refreshed keeps the same table version
+     *
+     * @param slot      - the row
+     * @param metric    - the cost of the route
+     * @param hop       - the index of the next hop interface or LOCAL
+     * @param timestamp - when the route was last heard
+     */
+    void set(int slot, int metric, int hop, long timestamp) {
+        page(slot).putLong(offset(slot) + TIMESTAMP, timestamp); // in place, snapshots never read it
+        if (metric(slot) == metric && hop(slot) == hop) return;
+        encode(slot, metric, hop);
+        version++;
+        changed(slot);
+    }
+
+    /**
+     * removes a row, its slot may be handed out again by add
+     *
+     * @param slot - the row
+     */
+    void remove(int slot) {
+        long bucket = key(address(slot), prefix(slot)) << SLOT_BITS | slot;
+        int i = hash(bucket >>> SLOT_BITS) & mask;
+        while (index.getLong(i << 3) != bucket) i = (i + 1) & mask;
+
+        // backward shift the rest of the probe run so lookups never need tombstones
+        long next;
+        for (int j = (i + 1) & mask; (next = index.getLong(j << 3)) != EMPTY; j = (j + 1) & mask) {
+            int home = hash(next >>> SLOT_BITS) & mask;
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                index.putLong(i << 3, next);
+                i = j;
+            }
+        }
+        index.putLong(i << 3, EMPTY);
+
+        ByteBuffer records = writable(slot);
+        int r = offset(slot);
+        records.putShort(r, (short) 0);
+        records.putInt(r + HOP, freeSlot);
+        freeSlot = slot;
+        size--;
+        version++;
+        changed(slot);
+    }
+
+    /**
+     * the version of the table, bumped whenever a row is added, removed or changes its advertised route
+     *
+     * @return the version
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * takes an immutable copy of the table. the copy shares the pages of the table, which the table copies before it
+     * next writes to them, and carries the slots that changed since the last snapshot
+     *
+     * @return the snapshot
+     */
+    RouteSnapshot snapshot() {
+        return snapshot(null);
+    }
+
+    /**
+     * takes an immutable copy of the table along with the routes to forward by
+     *
+     * @param forwarding - a snapshot of the trie of the reachable rows by their slots, null for none
+     * @return the snapshot
+     */
+    RouteSnapshot snapshot(PrefixTrie forwarding) {
+        int[] slots = Arrays.copyOf(changed, changes);
+        Arrays.sort(slots);
+        int distinct = 0;
+        for (int i = 0; i < slots.length; i++) {
+            if (i == 0 || slots[i] != slots[i - 1]) slots[distinct++] = slots[i];
+        }
+        RouteSnapshot snapshot = new RouteSnapshot(version, size, used, pages.clone(), snapshotVersion,
+                Arrays.copyOf(slots, distinct), forwarding);
+        if (offHeap) {
+            reclaim();
+            if (readables == readable.length) {
+                readable = Arrays.copyOf(readable, readables * 2);
+                readableEpoch = Arrays.copyOf(readableEpoch, readables * 2);
+            }
+            readable[readables] = snapshot;
+            readableEpoch[readables++] = epoch;
+        }
+        snapshotVersion = version;
+        changes = 0;
+        epoch++;
+        return snapshot;
+    }
+
+    /**
+     * drops the snapshots nobody has pinned, they can't be pinned from here on, and moves the retired pages only they
+     * held to the spare pages. spare pages past what the batch just ended copied are left to the collector, so a
+     * burst doesn't keep its pages for good. called as a newer snapshot is taken, which replaces the newest one
+     */
+    private void reclaim() {
+        int kept = 0;
+        for (int i = 0; i < readables; i++) {
+            if (readable[i].reclaim()) continue;
+            readable[kept] = readable[i];
+            readableEpoch[kept++] = readableEpoch[i];
+        }
+        Arrays.fill(readable, kept, readables, null);
+        readables = kept;
+        int still = 0;
+        for (int i = 0; i < retirements; i++) {
+            if (held(retiredFirst[i], retiredLast[i])) {
+                retired[still] = retired[i];
+                retiredFirst[still] = retiredFirst[i];
+                retiredLast[still++] = retiredLast[i];
+            } else {
+                if (spares == spare.length) spare = Arrays.copyOf(spare, spares * 2);
+                spare[spares++] = retired[i];
+            }
+        }
+        Arrays.fill(retired, still, retirements, null);
+        retirements = still;
+        if (spares > copies) {
+            Arrays.fill(spare, copies, spares, null);
+            spares = copies;
+        }
+        copies = 0;
+    }
+
+    /**
+     * checks if a snapshot that may still be read was taken in a range of epochs
+     */
+    private boolean held(long first, long last) {
+        for (int i = 0; i < readables; i++) {
+            if (readableEpoch[i] >= first && readableEpoch[i] <= last) return true;
+        }
+        return false;
+    }
+
+    /**
+     * copies the rip entry of a row
+     *
+     * @param slot - the row
+     * @param dst  - the buffer to append the 20 byte entry to
+     */
+    void copyEntry(int slot, ByteBuffer dst) {
+        dst.put(dst.position(), pages[slot >>> PAGE_SHIFT], offset(slot), ENTRY_SIZE);
+        dst.position(dst.position() + ENTRY_SIZE);
+    }
+
+    /**
+     * the number of rows
+     *
+     * @return the row count
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * the upper bound of the slots in use, iterate slots below this and skip the ones not in use
+     *
+     * @return one past the highest slot ever used
+     */
+    int limit() {
+        return used;
+    }
+
+    /**
+     * checks if a slot holds a row
+     *
+     * @param slot - the slot
+     * @return true if the slot is in use
+     */
+    boolean inUse(int slot) {
+        return page(slot).getShort(offset(slot)) != 0;
+    }
+
+    /**
+     * the network address of a row
+     */
+    int address(int slot) {
+        return page(slot).getInt(offset(slot) + 4);
+    }
+
+    /**
+     * the prefix length of a row
+     */
+    int prefix(int slot) {
+        return Integer.bitCount(page(slot).getInt(offset(slot) + 8));
+    }
+
+    /**
+     * the metric (cost/weight) of a row
+     */
+    int metric(int slot) {
+        return page(slot).getInt(offset(slot) + 16);
+    }
+
+    /**
+     * the index of the next hop interface of a row, LOCAL for a directly connected network
+     */
+    int hop(int slot) {
+        return page(slot).getInt(offset(slot) + HOP);
+    }
+
+    /**
+     * the time a row was last heard
+     */
+    long timestamp(int slot) {
+        return page(slot).getLong(offset(slot) + TIMESTAMP);
+    }
+
+    /**
+     * checks where the table keeps its rows
+     *
+     * @return true if the pages and the index are off the heap
+     */
+    boolean offHeap() {
+        return offHeap;
+    }
+
+    /**
+     * writes the route of a row, the next hop is advertised in the next hop and route tag fields of its rip entry
+     *
+     * @param slot   - the row
+     * @param metric - the cost of the route
+     * @param hop    - the index of the next hop interface or LOCAL
+     */
+    private void encode(int slot, int metric, int hop) {
+        ByteBuffer records = writable(slot);
+        int r = offset(slot);
+        records.putShort(r + 2, (short) (hop == LOCAL ? 0 : hopPort[hop])); // Route Tag, to be used as the Port address of the remote hop
+        records.putInt(r + 12, hop == LOCAL ? 0 : hopAddress[hop]); // Next Hop 4 bytes, since we don't have enough room the port is in the Route tag field
+        records.putInt(r + 16, metric); // Metric 4 bytes
+        records.putInt(r + HOP, hop);
+    }
+
+    /**
+     * converts CIDR int to subnet mask int
+     *
+     * @param cidr - integer representing the CIDR class
+     * @return int that is a subnet mask
+     */
+    private static int CIDRToSubmask(int cidr) {
+        return cidr == 0 ? 0 : 0xffffffff << (32 - cidr);
+    }
+
+    private void changed(int slot) {
+        if (changes == changed.length) changed = Arrays.copyOf(changed, changes * 2);
+        changed[changes++] = slot;
+    }
+
+    private ByteBuffer page(int slot) {
+        return pages[slot >>> PAGE_SHIFT];
+    }
+
+    static int offset(int slot) {
+        return (slot & (PAGE_SLOTS - 1)) * RECORD_SIZE;
+    }
+
+    /**
+     * the page of a slot, copied first if a snapshot still shares it
+     */
+    private ByteBuffer writable(int slot) {
+        int p = slot >>> PAGE_SHIFT;
+        if (copied[p] != epoch) {
+            ByteBuffer copy;
+            if (spares > 0) {
+                copy = spare[--spares];
+                spare[spares] = null;
+            } else {
+                copy = allocate(PAGE_SIZE);
+            }
+            copy.put(0, pages[p], 0, PAGE_SIZE);
+            if (offHeap) retire(pages[p], copied[p]);
+            copies++;
+            pages[p] = copy;
+            copied[p] = epoch;
+        }
+        return pages[p];
+    }
+
+    /**
+     * keeps a page the table no longer uses until the snapshots holding it can't be read, the ones taken from the
+     * epoch it was made in up to the last one
+     */
+    private void retire(ByteBuffer page, long made) {
+        if (retirements == retired.length) {
+            retired = Arrays.copyOf(retired, retirements * 2);
+            retiredFirst = Arrays.copyOf(retiredFirst, retirements * 2);
+            retiredLast = Arrays.copyOf(retiredLast, retirements * 2);
+        }
+        retired[retirements] = page;
+        retiredFirst[retirements] = made;
+        retiredLast[retirements++] = epoch - 1;
+    }
+
+    private ByteBuffer allocate(int bytes) {
+        return offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+    }
+
+    private ByteBuffer newIndex(int buckets) {
+        ByteBuffer buffer = allocate(buckets << 3);
+        for (int i = 0; i < buckets; i++) buffer.putLong(i << 3, EMPTY);
+        return buffer;
+    }
+
+    private int newSlot() {
+        if (used == MAX_SLOTS) throw new IllegalStateException("routing table is full");
+        if ((used & (PAGE_SLOTS - 1)) == 0) {
+            int p = used >>> PAGE_SHIFT;
+            if (p == pages.length) {
+                pages = Arrays.copyOf(pages, Math.max(p * 2, 4));
+                copied = Arrays.copyOf(copied, pages.length);
+            }
+            pages[p] = allocate(PAGE_SIZE);
+            copied[p] = epoch;
+        }
+        return used++;
+    }
+
+    private void growIndex() {
+        ByteBuffer old = index;
+        int buckets = (mask + 1) * 2;
+        index = newIndex(buckets);
+        mask = buckets - 1;
+        for (int j = 0; j < old.capacity() >> 3; j++) {
+            long bucket = old.getLong(j << 3);
+            if (bucket == EMPTY) continue;
+            int i = hash(bucket >>> SLOT_BITS) & mask;
+            while (index.getLong(i << 3) != EMPTY) i = (i + 1) & mask;
+            index.putLong(i << 3, bucket);
+        }
+    }
+
+    private static int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+}
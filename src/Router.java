@@ -1,21 +1,47 @@
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
-public class Router implements Runnable {
+public class Router {
     private boolean threadSuspended = false;
     private boolean run = true;
-    private final ConcurrentHashMap<String, RouteRow> routingTable = new ConcurrentHashMap<>();
+    private Scheduler loop;
+    private static boolean offHeapTables = false;
+    private final RouteTable table = new RouteTable(32, offHeapTables); // only touched on the router's scheduler
+    private volatile RouteSnapshot snapshot = RouteSnapshot.EMPTY; // the table as of the end of the last batch
+    private final PrefixTrie forwarding = new PrefixTrie(); // the reachable rows, published with every snapshot
     private final ArrayList<Interface> interfaces = new ArrayList<>();
-    private static final int TABLE_MAX_SIZE = 25;
-    private static final int TIMEOUT_SIZE = 1000; // normally 30 seconds
-    private static final long GARBAGE_COLLECTOR_TIME = 3000; // normally 120 seconds
-    private static final long ROUTE_TTL = 5000; // normally 120 seconds
+    private final RipDecoder decoder = new RipDecoder();
+    private final ResponseEncoder encoder = new ResponseEncoder();
+    private final ResponseEncoder triggeredEncoder = new ResponseEncoder();
+    private final ResponseEncoder summaryEncoder = new ResponseEncoder();
+    private final RouteSummarizer summarizer = new RouteSummarizer();
+    private final ByteBuffer request = wholeTableRequest();
+    private final ByteBuffer hello = helloMessage();
+    private final ByteBuffer reply = ByteBuffer.allocateDirect(RipDecoder.MAX_SIZE); // answers to specific requests
+    private final BitSet changed = new BitSet(); // slots to send in the next triggered update
+    private boolean triggerPending = false;
+    private long[] localEndpoints = new long[0]; // sorted (address, port) of every interface, for poison checks
+    private static final int INFINITY = 16;
+    private static RipTimers timers = RipTimers.SCALED;
+    private static String defaultTransport = "udp";
+    private static TableLogger logger; // null for headless runs
+    private final RouterStats stats = new RouterStats(interfaces);
+    private int peakRoutes = 0;
+    private long lastChange = 0; // scheduler time the protocol last changed the routing table
+    private ExpiryWheel expiry; // created on start, from the scheduler's clock
+    private TableFile tableFile; // null unless the table is persisted
+    private final IntConsumer expireRoute = this::expireRoute;
+    private boolean expiryChanges = false;
     private static final PrintStream out = System.out;
 
 
@@ -24,25 +50,70 @@ public class Router implements Runnable {
      *
      * @param inter    - the interface address and port
      * @param neighbor - the remote address and port
+     * @param options  - options of the link, transport=udp or transport=mem (see setDefaultTransport), summarize or
+     *                 summarize=true to advertise summarized routes, hello=MS to send a hello every MS milliseconds
+     *                 and declare the neighbour down once detect=N (3 by default) intervals pass without hearing it,
+     *                 which only starts once the neighbour has sent a hello of its own
      */
-    void newInterface(String inter, String neighbor) {
-        newInterface(inter, neighbor, 1);
+    void newInterface(String inter, String neighbor, String... options) {
+        String transport = defaultTransport;
+        boolean summarize = false;
+        long hello = 0;
+        int detect = 3;
+        for (String option : options) {
+            try {
+                if (option.startsWith("transport=")) {
+                    transport = option.substring("transport=".length());
+                } else if (option.equals("summarize") || option.startsWith("summarize=")) {
+                    summarize = !option.equals("summarize=false");
+                } else if (option.startsWith("hello=")) {
+                    hello = Math.max(0, Long.parseLong(option.substring("hello=".length())));
+                } else if (option.startsWith("detect=")) {
+                    detect = Math.max(1, Integer.parseInt(option.substring("detect=".length())));
+                } else if (!option.isEmpty()) {
+                    System.err.println("unknown link option: " + option);
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("invalid link option: " + option);
+            }
+        }
+        newInterface(inter, neighbor, 1, transport, summarize, hello, detect);
     }
 
     /**
      * creates a new interface/connection/edge between 2 routers
      *
-     * @param inter    - the interface address and port
-     * @param neighbor - the remote interface and port it should connect to
-     * @param cost     - the cost of the port
+     * @param inter     - the interface address and port
+     * @param neighbor  - the remote interface and port it should connect to
+     * @param cost      - the cost of the port
+     * @param transport - udp for a socket, mem for an in-memory link to a router in this process
+     * @param summarize - true to advertise summarized routes through the interface
+     * @param hello     - milliseconds between hellos, 0 for none
+     * @param detect    - hello intervals without hearing the neighbour before it is declared down
      */
-    private void newInterface(String inter, String neighbor, int cost) {
+    private void newInterface(String inter, String neighbor, int cost, String transport, boolean summarize,
+                              long hello, int detect) {
         try {
-            String[] in = inter.split(":");
-            String[] nei = neighbor.split(":");
-            DatagramSocket sock = new DatagramSocket(Integer.parseInt(in[1]), InetAddress.getByName(in[0]));
-            interfaces.add(new Interface(sock, InetAddress.getByName(nei[0]), Integer.parseInt(nei[1])));
-        } catch (NumberFormatException | IOException e) {
+            int split = inter.lastIndexOf(':');
+            int neighborSplit = neighbor.lastIndexOf(':');
+            int localAddress = parseAddress(inter.substring(0, split));
+            int remoteAddress = parseAddress(neighbor.substring(0, neighborSplit));
+            int localPort = Integer.parseInt(inter.substring(split + 1));
+            int remotePort = Integer.parseInt(neighbor.substring(neighborSplit + 1));
+            Transport link;
+            switch (transport) {
+                case "mem":
+                    link = new MemoryTransport(localAddress, localPort, remoteAddress, remotePort);
+                    break;
+                case "udp":
+                    link = new UdpTransport(localAddress, localPort, remoteAddress, remotePort);
+                    break;
+                default:
+                    System.err.println("unknown transport: " + transport);
+                    return;
+            }
+            interfaces.add(new Interface(link, remoteAddress, remotePort, summarize, hello, detect));
+        } catch (NumberFormatException | StringIndexOutOfBoundsException | IOException e) {
             e.printStackTrace();
         }
     }
@@ -54,37 +125,228 @@ public class Router implements Runnable {
      * @param netMask - the subnet mask for the network
      * @param cost    - the cost, which is always 0
      */
-    void newSubnetEntry(InetAddress network, int netMask, int cost) {
-        RouteRow row;
-        try {
-            row = new RouteRow(
-                    network, netMask,
-                    new Interface(
-                            new DatagramSocket(null),
-                            InetAddress.getByName("0.0.0.0"),
-                            0),
-                    cost + 1);
-        } catch (SocketException | UnknownHostException e) {
-            e.printStackTrace();
-            return;
+    void newSubnetEntry(int network, int netMask, int cost) {
+        if (table.find(network, netMask) != RouteTable.NONE) return;
+        addRoute(network, netMask, cost + 1, RouteTable.LOCAL);
+        publish();
+    }
+
+    /**
+     * parses an address from a config file. dotted quads are parsed by hand, so loading thousands of configs never
+     * waits on the resolver, anything else is looked up as a host name
+     *
+     * @param address - the address, usually a dotted quad
+     * @return the ipv4 address as an int
+     * @throws UnknownHostException if the address isn't a dotted quad and can't be resolved
+     */
+    static int parseAddress(String address) throws UnknownHostException {
+        int value = 0;
+        int octet = 0;
+        int digits = 0;
+        int dots = 0;
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c >= '0' && c <= '9' && digits < 3) {
+                octet = octet * 10 + (c - '0');
+                digits++;
+            } else if (c == '.' && digits > 0 && dots < 3 && octet <= 255) {
+                value = (value << 8) | octet;
+                octet = 0;
+                digits = 0;
+                dots++;
+            } else {
+                dots = -1;
+                break;
+            }
+        }
+        if (dots == 3 && digits > 0 && octet <= 255) return (value << 8) | octet;
+        return bytesTo32Int(InetAddress.getByName(address).getAddress(), 0);
+    }
+
+    /**
+     * publishes a snapshot of the table if it changed since the last one, called at the end of every batch of
+     * changes on the router's scheduler
+     */
+    void publish() {
+        if (table.version() == snapshot.version()) return;
+        snapshot = table.snapshot(forwarding.snapshot());
+        if (tableFile != null) tableFile.write(snapshot);
+    }
+
+    /**
+     * keeps the routing table in a file, the routes a previous run left there are loaded when the router starts and
+     * the file is only written over after that. call before start
+     *
+     * @param path - the file
+     * @throws IOException if the file can't be opened
+     */
+    void persist(Path path) throws IOException {
+        tableFile = new TableFile(path);
+    }
+
+    /**
+     * loads the learned routes of a previous run. they come back aged so that only two update periods are left
+     * before they time out, the neighbours' answers to the requests sent on start confirm the ones still valid long
+     * before that. routes through an interface that no longer exists and unreachable routes are dropped
+     *
+     * @param saved - the saved rip response
+     */
+    private void restore(ByteBuffer saved) {
+        long heard = loop.now() - Math.max(0, timers.timeout - 2 * timers.update);
+        decoder.wrap(saved);
+        while (decoder.next()) {
+            if (decoder.family() != RipDecoder.AF_INET || decoder.metric() >= INFINITY) continue;
+            int hop = hopOf(decoder.nextHop(), decoder.routeTag());
+            int address = decoder.address();
+            int prefix = decoder.prefixLength();
+            if (hop == RouteTable.NONE || table.find(address, prefix) != RouteTable.NONE) continue;
+            int slot = table.add(address, prefix, decoder.metric(), hop, heard);
+            forwarding.put(address, prefix, slot);
+            expiry.schedule(slot, heard + timers.timeout);
+        }
+        peakRoutes = Math.max(peakRoutes, table.size());
+    }
+
+    /**
+     * finds the interface with a local endpoint
+     *
+     * @param address - the local address
+     * @param port    - the local port
+     * @return the index of the interface, RouteTable.NONE if there isn't one
+     */
+    private int hopOf(int address, int port) {
+        for (int i = 0; i < interfaces.size(); i++) {
+            Interface inter = interfaces.get(i);
+            if (inter.getLocalAddressInt() == address && inter.getLocalPort() == port) return i;
+        }
+        return RouteTable.NONE;
+    }
+
+    /**
+     * the routing table as of the end of the last batch of changes, for readers on the router's scheduler. a reader
+     * on another thread takes it with acquire instead, since an off heap table may reuse its pages once it is replaced
+     *
+     * @return the latest snapshot
+     */
+    RouteSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * pins the latest snapshot, so an off heap table doesn't reuse its pages however many batches go by until it is
+     * released. safe from any thread
+     *
+     * @return the latest snapshot, to be given back with release
+     */
+    RouteSnapshot acquire() {
+        while (true) {
+            RouteSnapshot routes = snapshot;
+            if (routes.pin()) return routes; // only a snapshot that has just been replaced can fail, read again
+        }
+    }
+
+    /**
+     * gives back a snapshot taken with acquire
+     *
+     * @param routes - the snapshot
+     */
+    void release(RouteSnapshot routes) {
+        routes.unpin();
+    }
+
+    /**
+     * adds a row to the routing table and the forwarding trie
+     *
+     * @param address - the network address
+     * @param netMask - the prefix length
+     * @param metric  - the cost of the route
+     * @param hop     - the index of the next hop interface or RouteTable.LOCAL
+     * @return the slot of the new row
+     */
+    private int addRoute(int address, int netMask, int metric, int hop) {
+        long now = now();
+        int slot = table.add(address, netMask, metric, hop, now);
+        peakRoutes = Math.max(peakRoutes, table.size());
+        if (metric < INFINITY) forwarding.put(address, netMask, slot);
+        if (hop != RouteTable.LOCAL) expiry.schedule(slot, now + timers.timeout);
+        return slot;
+    }
+
+    /**
+     * changes the route of a row, keeping the forwarding trie and the expiry timer in step. a reachable route gets a
+     * fresh timeout, which is all a refresh costs, and a route that becomes unreachable starts garbage collection
+     *
+     * @param slot   - the row
+     * @param metric - the new metric, INFINITY for unreachable
+     * @param hop    - the index of the next hop interface
+     * @param now    - the current time
+     */
+    private void updateRoute(int slot, int metric, int hop, long now) {
+        boolean wasReachable = table.metric(slot) < INFINITY;
+        table.set(slot, metric, hop, now);
+        if (metric < INFINITY) {
+            if (!wasReachable) forwarding.put(table.address(slot), table.prefix(slot), slot);
+            expiry.schedule(slot, now + timers.timeout);
+        } else if (wasReachable) {
+            forwarding.remove(table.address(slot), table.prefix(slot));
+            expiry.schedule(slot, now + timers.garbage);
         }
+    }
 
-        if (routingTable.size() >= TABLE_MAX_SIZE) return;
-        routingTable.put(network.toString().replace("/", "") + "/" + netMask, row);
+    /**
+     * removes a row from the routing table and the forwarding trie
+     *
+     * @param slot - the row
+     */
+    private void removeRoute(int slot) {
+        expiry.cancel(slot);
+        if (table.metric(slot) < INFINITY) forwarding.remove(table.address(slot), table.prefix(slot));
+        table.remove(slot);
     }
 
     /**
-     * synchronized print function for the router table
+     * called by the expiry wheel when a route times out or its garbage collection timer runs out. a timed out route
+     * is advertised as unreachable until it is deleted
+     *
+     * @param slot - the expired row
+     */
+    private void expireRoute(int slot) {
+        if (table.metric(slot) < INFINITY) {
+            updateRoute(slot, INFINITY, table.hop(slot), now());
+            triggerUpdate(slot);
+            stats.routesExpired.increment();
+        } else {
+            removeRoute(slot);
+            stats.routesDeleted.increment();
+        }
+        expiryChanges = true;
+        lastChange = loop.now();
+    }
+
+    /**
+     * the interfaces of the router, indexed by the hop of the routes through them
+     *
+     * @return the interfaces, not to be modified
+     */
+    List<Interface> interfaces() {
+        return interfaces;
+    }
+
+    /**
+     * print function for the router table, prints the latest snapshot
      */
     public void print() {
+        RouteSnapshot routes = acquire();
         synchronized (out) {
             out.printf("\n\n%s \t\t %s \t\t %s\n", "Address", "Next Hop", "Cost");
             out.println("====================================================");
-            routingTable.values()
-                    .stream()
-                    .sorted(Comparator.comparingInt(RouteRow::getMetric))
-                    .forEach(row -> out.println(row.toString()));
+            IntStream.range(0, routes.limit())
+                    .filter(routes::inUse)
+                    .boxed()
+                    .sorted(Comparator.comparingInt(routes::metric))
+                    .forEach(slot -> out.println(rowString(routes, slot)));
         }
+        release(routes);
     }
 
     /**
@@ -96,102 +358,246 @@ public class Router implements Runnable {
         StringBuilder x = new StringBuilder();
         x.append("\n\nAddress \t\t Next Hop \t\t Cost\n");
         x.append("====================================================\n");
-        routingTable.forEach((i, row) -> x.append(row.toString()));
+        RouteSnapshot routes = acquire();
+        for (int slot = 0; slot < routes.limit(); slot++) {
+            if (routes.inUse(slot)) x.append(rowString(routes, slot)).append('\n');
+        }
+        release(routes);
         return x.toString();
     }
 
     /**
-     * main loop for router, constantly scans the interfaces for new packets
+     * creates a string representation of a routing table row
+     *
+     * @param routes - the snapshot holding the row
+     * @param slot   - the row
+     * @return string of the route row
      */
-    public void run() {
-        interfaces.forEach(runner -> new Thread(runner).start());
-        GarbageCollector gar = new GarbageCollector();
-        Broadcast br = new Broadcast();
-        new Thread(br).start();
-        new Thread(gar).start();
-
-        boolean changes = false;
+    String rowString(RouteSnapshot routes, int slot) {
+        int address = routes.address(slot);
+        int hop = routes.hop(slot);
+        Interface inter = hop == RouteTable.LOCAL ? null : interfaces.get(hop);
+        return String.format("%d.%d.%d.%d/%d \t %s:%d \t\t %d",
+                address >>> 24, (address >> 16) & 0xFF, (address >> 8) & 0xFF, address & 0xFF,
+                routes.prefix(slot),
+                inter == null ? "0.0.0.0" : inter.getLocalAddress(),
+                inter == null ? 0 : inter.getLocalPort(),
+                routes.metric(slot));
+    }
 
-        //TODO broadcast request
-        while (run) {
-            if (threadSuspended) continue;
-
-            // get incoming messages
-            for (Interface inter : interfaces) {
-                if (!inter.newData()) continue;
-                for (DatagramPacket mess : inter.getData()) {
-                    if (mess.getData()[0] == 2) { // a response, for now don't worry about unsolicited responses
-                        changes = handleRouteResponse(mess, inter);
-                    } else if (mess.getData()[0] == 1) { // request, need to send a correctly formatted response
-                        //TODO respond to a RIP request
-                    }
+    /**
+     * starts the router on a scheduler, the scheduler may be shared with other routers
+     *
+     * @param scheduler - the event loop or simulation that will run all of this router's reads and timers
+     */
+    void start(Scheduler scheduler) {
+        loop = scheduler;
+        loop.execute(() -> {
+            expiry = new ExpiryWheel(timers.tick, 64, loop.now());
+            localEndpoints = interfaces.stream()
+                    .mapToLong(inter -> endpoint(inter.getLocalAddressInt(), inter.getLocalPort()))
+                    .sorted()
+                    .toArray();
+            for (int i = 0; i < interfaces.size(); i++) {
+                Interface inter = interfaces.get(i);
+                int hop = i;
+                table.defineHop(hop, inter.getLocalAddressInt(), inter.getLocalPort());
+                try {
+                    inter.open(loop, () -> receive(inter, hop));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                inter.heard(loop.now()); // the neighbour gets one detection time to show up
+                if (inter.helloInterval() > 0) {
+                    loop.schedule(new Hello(inter, hop), loop.random().nextLong(inter.helloInterval()) + 1);
+                }
+            }
+            if (tableFile != null) restore(tableFile.saved());
+            publish();
+            if (tableFile != null) {
+                try {
+                    tableFile.open(snapshot);
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
             }
+            requestTables();
+            // announce straight away for neighbours that were up before the request, then settle into a random
+            // phase of the update period
+            broadcastResponse();
+            loop.schedule(new Broadcast(), loop.random().nextLong(1, timers.update + 1));
+            loop.schedule(new GarbageCollector(), timers.tick);
+        });
+    }
 
-            // print table is changes made
-            if (changes) {
-                print();
-                changes = false;
+    /**
+     * handles every datagram waiting in an interface's receive ring, called on the event loop once its transport
+     * has delivered
+     *
+     * @param inter - the interface with data waiting
+     * @param hop   - the index of the interface
+     */
+    private void receive(Interface inter, int hop) {
+        if (!run || threadSuspended) return;
+        boolean changes = false;
+        ByteBuffer mess;
+        // any datagram shows the neighbour is alive, hellos carry nothing else and are dropped below
+        if (inter.peek() != null && inter.heard(loop.now())) {
+            inter.send(request); // back from the dead, get its whole table rather than wait for the next update
+            stats.requestsSent.increment();
+        }
+        while ((mess = inter.peek()) != null) {
+            if (mess.get(0) == 2) { // a response, for now don't worry about unsolicited responses
+                long start = System.nanoTime();
+                changes |= handleRouteResponse(mess, hop);
+                stats.responseLatency.record(System.nanoTime() - start);
+            } else if (mess.get(0) == 1) { // request, answered straight back to the neighbor
+                publish(); // answer from the table as it is after the responses before it
+                handleRequest(mess, inter, hop);
+            } else if (mess.get(0) == RipDecoder.HELLO) {
+                inter.helloHeard();
             }
+            inter.release();
         }
-        interfaces.forEach(Interface::kill);
-        gar.kill();
-        br.kill();
+        publish();
+
+        // log the changes made
+        if (changes && logger != null) logger.changed(this);
     }
 
     /**
-     * the method to handle a route response
+     * the method to handle a route response, must be called on the router's scheduler
      *
-     * @param packet - response packet to take
-     * @param inter  - the interface it came from
+     * @param packet - response packet to take, positioned at the start of the rip header
+     * @param hop    - the index of the interface it came from
      * @return whether changes were made to the routing table
      */
-    private boolean handleRouteResponse(DatagramPacket packet, Interface inter) {
+    boolean handleRouteResponse(ByteBuffer packet, int hop) {
         boolean changes = false;
-        byte[] resp = packet.getData();
-        // Get data appears to include the udp header
-        for (int i = 4; i < packet.getLength(); i += 20) {
+        int entries = 0;
+        long now = loop.now();
+        RipDecoder entry = decoder.wrap(packet);
+        while (entry.next()) {
+            entries++;
             //grab the fields
-
-            InetAddress remoteAddress;
-            InetAddress nextHop;
-            try {
-                remoteAddress = InetAddress.getByAddress(Arrays.copyOfRange(resp, i + 4, i + 8));
-                nextHop = InetAddress.getByAddress(Arrays.copyOfRange(resp, i + 12, i + 16));
-            } catch (UnknownHostException e) {
-                e.printStackTrace();
-                continue;
-            }
-            int nextHopPort = bytesToShort(resp, i + 2) & 0xFFFF; // hijacking the the route tag to make this work on UDP
-            int subnetMask = SubmaskToCIDR(bytesTo32Int(resp, i + 8));
-            int metric = bytesTo32Int(resp, i + 16);
-
-            if (interfaces.parallelStream().anyMatch(in -> in.getLocalAddress().equals(nextHop.toString()) &&
-                    in.getLocalPort() == nextHopPort)) {
-                metric = 16; // infinity
+            if (entry.family() != RipDecoder.AF_INET) continue;
+            int remoteAddress = entry.address();
+            int subnetMask = entry.prefixLength();
+            int metric = entry.metric();
+
+            // hijacking the the route tag to make this work on UDP, it carries the port of the next hop
+            if (Arrays.binarySearch(localEndpoints, endpoint(entry.nextHop(), entry.routeTag())) >= 0) {
+                metric = INFINITY;
             }
+            metric = Math.min(metric + 1, INFINITY);
 
-            String address = remoteAddress.toString().replace("/", "") + "/" + subnetMask;
-            if (metric > 15) continue;
-            if (!routingTable.containsKey(address)) {
-                routingTable.put(address, new RouteRow(remoteAddress, subnetMask, inter, metric + 1));
-                broadcastResponse();
+            int slot = table.find(remoteAddress, subnetMask);
+            if (slot == RouteTable.NONE) {
+                if (metric == INFINITY) continue;
+                triggerUpdate(addRoute(remoteAddress, subnetMask, metric, hop));
+                stats.routesAdded.increment();
                 changes = true;
-            } else if (routingTable.get(address).getMetric() > metric + 1) { // if metric is less update
-                routingTable.put(address, new RouteRow(remoteAddress, subnetMask, inter, metric + 1));
-                broadcastResponse();
+                //Check if the current row is from the same router, if so always take its word
+            } else if (table.hop(slot) == hop) {
+                if (metric != table.metric(slot)) {
+                    (metric < table.metric(slot) ? stats.routesImproved : stats.routesWorsened).increment();
+                    updateRoute(slot, metric, hop, now);
+                    triggerUpdate(slot);
+                    changes = true;
+                } else if (metric < INFINITY) {
+                    updateRoute(slot, metric, hop, now);
+                    stats.routesRefreshed.increment();
+                }
+            } else if (table.metric(slot) > metric) { // if metric is less update
+                updateRoute(slot, metric, hop, now);
+                triggerUpdate(slot);
+                stats.routesImproved.increment();
                 changes = true;
-                //Check if the current row is from the same router, if so update
-            } else if (routingTable.get(address).getInter().getRemoteAddress().equals(packet.getAddress().toString()) &&
-                    routingTable.get(address).getInter().getRemotePort() == packet.getPort()) {
-                if (metric + 1 != routingTable.get(address).getMetric()) changes = true;
-                routingTable.put(address, new RouteRow(remoteAddress, subnetMask, inter, metric + 1));
             }
 
         }
+        stats.entriesParsed.add(entries);
+        if (changes) lastChange = now;
         return changes;
     }
 
+    /**
+     * answers a rip request. a request for the whole table, a single entry with family 0 and metric 16, gets the
+     * cached full response with poison reverse like a regular update. any other request gets its own entries back
+     * with the current route of each, or metric 16 for the ones not in the table
+     *
+     * @param packet - the request, positioned at the start of the rip header
+     * @param inter  - the interface it came from
+     * @param hop    - the index of the interface
+     */
+    private void handleRequest(ByteBuffer packet, Interface inter, int hop) {
+        stats.requestsReceived.increment();
+        RipDecoder entry = decoder.wrap(packet);
+        if (!entry.next()) return;
+        if (entry.family() == 0 && entry.metric() == INFINITY && !entry.next()) {
+            fullResponse(inter).send(inter, hop);
+            return;
+        }
+
+        reply.clear();
+        reply.put((byte) 2); // command response
+        reply.put((byte) 2); // version
+        reply.putShort((short) 0); // zero padding
+        entry = decoder.wrap(packet);
+        for (int i = 0; entry.next(); i++) {
+            int position = RipDecoder.HEADER_SIZE + i * RipDecoder.ENTRY_SIZE;
+            int slot = entry.family() == RipDecoder.AF_INET ? table.find(entry.address(), entry.prefixLength()) : RouteTable.NONE;
+            if (slot != RouteTable.NONE) {
+                table.copyEntry(slot, reply);
+            } else {
+                reply.put(packet.duplicate().limit(position + RipDecoder.ENTRY_SIZE).position(position));
+                reply.putInt(position + 16, INFINITY);
+            }
+        }
+        inter.send(reply.flip());
+    }
+
+    /**
+     * asks every neighbor for its whole table, so a starting or resuming router learns its routes as soon as the
+     * neighbors answer instead of at their next update
+     */
+    private void requestTables() {
+        for (Interface inter : interfaces) {
+            inter.send(request);
+            stats.requestsSent.increment();
+        }
+    }
+
+    /**
+     * builds a request for the whole table, a single entry with address family 0 and metric 16
+     *
+     * @return the request, ready to send
+     */
+    private static ByteBuffer wholeTableRequest() {
+        ByteBuffer request = ByteBuffer.allocateDirect(RipDecoder.HEADER_SIZE + RipDecoder.ENTRY_SIZE);
+        request.put((byte) 1); // command request
+        request.put((byte) 2); // version
+        request.putShort((short) 0); // zero padding
+        request.putShort((short) 0); // address family 0, everything
+        request.putShort((short) 0); // route tag
+        request.putInt(0).putInt(0).putInt(0); // address, mask and next hop
+        request.putInt(INFINITY);
+        return request.flip();
+    }
+
+    /**
+     * builds a hello, the private keepalive command with no entries
+     *
+     * @return the hello, ready to send
+     */
+    private static ByteBuffer helloMessage() {
+        ByteBuffer hello = ByteBuffer.allocateDirect(RipDecoder.HEADER_SIZE);
+        hello.put((byte) RipDecoder.HELLO);
+        hello.put((byte) 2); // version
+        hello.putShort((short) 0); // zero padding
+        return hello.flip();
+    }
+
     /**
      * converts byte array to int
      *
@@ -205,132 +611,275 @@ public class Router implements Runnable {
     }
 
     /**
-     * converts by to short
+     * packs an address and port into one long
      *
-     * @param arr   the array to pull from
-     * @param start start index of the array to pull from
-     * @return short equivalent to the byte array inserted
+     * @param address - the ipv4 address as an int
+     * @param port    - the port
+     * @return the packed endpoint
      */
-    private static short bytesToShort(byte[] arr, int start) {
-        return (short) ((arr[start] >> 8) | arr[start + 1]);
+    private static long endpoint(int address, int port) {
+        return (address & 0xFFFFFFFFL) << 16 | (port & 0xFFFF);
     }
 
     /**
      * broadcasts the route table using rip to all interfaces
      */
     private void broadcastResponse() {
-        interfaces.forEach(inter -> inter.send(ripResponse(inter)));
+        for (int i = 0; i < interfaces.size(); i++) fullResponse(interfaces.get(i)).send(interfaces.get(i), i);
+        stats.periodicUpdates.increment();
+        changed.clear(); // the full table covers anything a pending triggered update would have sent
     }
 
     /**
-     * builds the rip response message
+     * queues a changed row for the next triggered update. the first change starts a random hold down and every
+     * change until it expires goes out together, so a burst of changes costs one message per interface
      *
-     * @param inter the interface that it will use to send out the rip response message
-     * @return the m to byte array
+     * @param slot - the changed row
      */
-    private byte[] ripResponse(Interface inter) {
-        ByteArrayOutputStream msg = responseHeader();
-        routingTable.forEach((i, row) -> row.advertisement(msg, inter));
-        return msg.toByteArray();
+    private void triggerUpdate(int slot) {
+        changed.set(slot);
+        if (triggerPending) return;
+        triggerPending = true;
+        loop.schedule(this::sendTriggeredUpdate, loop.random().nextLong(timers.triggerMin, timers.triggerMax + 1));
     }
 
     /**
-     * builds the rip response header
+     * sends the rows changed since the last update on every interface
+     */
+    private void sendTriggeredUpdate() {
+        triggerPending = false;
+        if (!run) return;
+        if (changed.isEmpty()) return;
+        triggeredEncoder.prepare(snapshot, changed);
+        changed.clear();
+        if (triggeredEncoder.count() == 0) return;
+        for (int i = 0; i < interfaces.size(); i++) {
+            Interface inter = interfaces.get(i);
+            // a change can split or grow a summary, so summarizing interfaces get the whole summarized table again
+            (inter.summarize() ? fullResponse(inter) : triggeredEncoder).send(inter, i);
+        }
+        stats.triggeredUpdates.increment();
+    }
+
+    /**
+     * the full response for an interface, summarized if the interface asks for it, built from the latest snapshot
+     * unless it already was
+     *
+     * @param inter - the interface to send through
+     * @return the encoder holding the response
+     */
+    private ResponseEncoder fullResponse(Interface inter) {
+        if (inter.summarize()) {
+            summaryEncoder.prepare(snapshot, summarizer);
+            return summaryEncoder;
+        }
+        encoder.prepare(snapshot);
+        return encoder;
+    }
+
+    /**
+     * sets the random hold down before a triggered update is sent
+     *
+     * @param min - the shortest hold down in milliseconds
+     * @param max - the longest hold down in milliseconds
+     */
+    static void setTriggerDelay(long min, long max) {
+        timers = timers.withTriggerDelay(min, max);
+    }
+
+    /**
+     * sets the timers of every router, call before any router is started
      *
-     * @return the msg as a ByteArrayOutputStream
+     * @param ripTimers - the timers
      */
-    private static ByteArrayOutputStream responseHeader() {
-        ByteArrayOutputStream msg = new ByteArrayOutputStream();
-        msg.write(2); // command response
-        msg.write(2); // version
-        msg.write(0); // zero padding
-        msg.write(0); // zero padding
-        // ones 2 bytes
-        // auth type 2 bytes
-        // authentication 16 bytes
-        //TODO maybe add fields for auth
-        return msg;
+    static void setTimers(RipTimers ripTimers) {
+        timers = ripTimers;
     }
 
     /**
-     * the garbage collector for the router
+     * sets the transport of links that don't name one, call before any interface is created
+     *
+     * @param transport - udp or mem
+     */
+    static void setDefaultTransport(String transport) {
+        defaultTransport = transport;
+    }
+
+    /**
+     * keeps the routing tables of routers created from then on off the heap, in direct buffers
+     *
+     * @param offHeap - true for direct buffers, false for the heap
+     */
+    static void setOffHeapTables(boolean offHeap) {
+        offHeapTables = offHeap;
+    }
+
+    /**
+     * sets where every router reports its table changes, call before any router is started
+     *
+     * @param tableLogger - the logger, null to log nothing
+     */
+    static void setLogger(TableLogger tableLogger) {
+        logger = tableLogger;
+    }
+
+    /**
+     * the counters of the router, safe to read from any thread
+     */
+    RouterStats stats() {
+        return stats;
+    }
+
+    /**
+     * the most rows the routing table has held
+     */
+    int peakRoutes() {
+        return peakRoutes;
+    }
+
+    /**
+     * the scheduler time the routing table last changed because of something heard or timed out
+     */
+    long lastChange() {
+        return lastChange;
+    }
+
+    /**
+     * the number of networks the router can currently reach, must be called on the router's scheduler
+     */
+    int reachableRoutes() {
+        return forwarding.size();
+    }
+
+    /**
+     * the current time of the router's clock, the wall clock until the router is started
+     *
+     * @return the time in milliseconds
+     */
+    private long now() {
+        return loop == null ? System.currentTimeMillis() : loop.now();
+    }
+
+    /**
+     * the garbage collector for the router, sweeps the expiry wheel every tick so the cost follows the number of
+     * routes expiring rather than the size of the table. reschedules itself on the event loop until the router is killed
      */
     private class GarbageCollector implements Runnable {
-        private boolean running = true;
 
         @Override
         public void run() {
-
-            //TODO: implement RIP requests
-            while (running) {
-                boolean change = false;
-                for (String key : routingTable.keySet()) {
-                    if (System.currentTimeMillis() - routingTable.get(key).getTimestamp() > ROUTE_TTL &&
-                            !routingTable.get(key).getInter().getLocalAddress().equals("0.0.0.0")) {
-                        routingTable.remove(key);
-                        change = true;
-                    }
-                }
-                if (change) print();
-                try {
-                    Thread.sleep(GARBAGE_COLLECTOR_TIME);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
+            if (!run) return;
+            expiryChanges = false;
+            expiry.advance(loop.now(), expireRoute);
+            publish();
+            if (expiryChanges && logger != null) logger.changed(Router.this);
+            loop.schedule(this, timers.tick);
         }
+    }
 
-        public void kill() {
-            running = false;
+    /**
+     * poisons every route through an interface whose neighbour has stopped answering and tells the other neighbours
+     * straight away, without the hold down of a normal triggered update
+     *
+     * @param hop - the index of the interface
+     */
+    private void neighbourDown(int hop) {
+        interfaces.get(hop).neighbourDown();
+        stats.neighboursLost.increment();
+        long now = loop.now();
+        boolean poisoned = false;
+        for (int slot = 0; slot < table.limit(); slot++) {
+            if (table.inUse(slot) && table.hop(slot) == hop && table.metric(slot) < INFINITY) {
+                updateRoute(slot, INFINITY, hop, now);
+                changed.set(slot);
+                poisoned = true;
+            }
         }
+        if (!poisoned) return;
+        lastChange = now;
+        publish();
+        sendTriggeredUpdate();
+        if (logger != null) logger.changed(this);
     }
 
     /**
-     * thread to broadcast a rip response every so often
+     * task to send a hello through an interface every hello interval and declare its neighbour down once it hasn't
+     * been heard from for the detection time. like bfd each hello goes out after 75 to 100% of the interval, so the
+     * hellos of neighbours don't stay in step. a neighbour is only declared down this way once it has sent a hello
+     * itself: with hello set on one end only, the other end is heard once an update period, and its routes are left
+     * to time out rather than flap every detection time. reschedules itself on the event loop until the router is
+     * killed
      */
-    private class Broadcast implements Runnable {
-        private boolean running = true;
+    private class Hello implements Runnable {
+
+        private final Interface inter;
+        private final int hop;
+        private final long started;
+        private boolean warned = false;
+
+        Hello(Interface inter, int hop) {
+            this.inter = inter;
+            this.hop = hop;
+            started = loop.now();
+        }
 
         @Override
         public void run() {
-            while (running) {
-                broadcastResponse();
-                try {
-                    Thread.sleep(TIMEOUT_SIZE);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+            if (!run) return;
+            if (!threadSuspended) {
+                inter.send(hello);
+                if (!inter.sendsHellos()) {
+                    if (!warned && loop.now() - started >= inter.detectTime() + timers.update) {
+                        warned = true;
+                        System.err.println(inter.getLocalAddress() + ":" + inter.getLocalPort()
+                                + " has heard no hello from its neighbour, set hello on both ends to detect failures");
+                    }
+                } else if (inter.neighbourUp() && loop.now() - inter.lastHeard() >= inter.detectTime()) {
+                    neighbourDown(hop);
                 }
             }
-        }
-
-        public void kill() {
-            running = false;
+            loop.schedule(this, inter.helloInterval() - loop.random().nextLong(inter.helloInterval() / 4 + 1));
         }
     }
 
     /**
-     * this was taken from Hacker's delight section 5.1 after being pointed to it from a stack overflow post that
-     * recommended it as the fastest way to convert subnet mask to cidr.
-     * How do you properly cite in code
+     * task to broadcast a rip response every update period, moved by a random jitter each time so routers that
+     * started together drift apart instead of flooding the network at the same moment. reschedules itself on the
+     * event loop until the router is killed
      */
-    private static int SubmaskToCIDR(int x) {
-        x = x - ((x >>> 1) & 0x55555555);
-        x = (x & 0x33333333) + ((x >>> 2) & 0x33333333);
-        x = (x + (x >>> 4)) & 0x0F0F0F0F;
-        x = x + (x >>> 8);
-        x = x + (x >>> 16);
-        return x & 0x0000003F;
+    private class Broadcast implements Runnable {
+
+        @Override
+        public void run() {
+            if (!run) return;
+            broadcastResponse();
+            loop.schedule(this, timers.update + loop.random().nextLong(-timers.jitter, timers.jitter + 1));
+        }
     }
 
     void suspend() {
-        threadSuspended = true;
+        loop.execute(() -> {
+            threadSuspended = true;
+            interfaces.forEach(inter -> inter.setPaused(true));
+        });
     }
 
     void resume() {
-        threadSuspended = false;
+        loop.execute(() -> {
+            threadSuspended = false;
+            interfaces.forEach(inter -> {
+                inter.setPaused(false);
+                inter.heard(loop.now()); // nothing was read while suspended, so nothing was heard
+            });
+            requestTables();
+        });
     }
 
     void kill() {
-        run = false;
+        loop.execute(() -> {
+            run = false;
+            interfaces.forEach(Interface::close);
+            if (tableFile != null) tableFile.close();
+        });
     }
 }
@@ -0,0 +1,181 @@
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * the counters of a router. they are bumped on the router's scheduler and read from any thread, the console or JMX,
+ * as LongAdders that need no coordination with the router. packet and byte counts are kept per interface and summed
+ * on read
+ */
+public class RouterStats implements RouterStatsMBean {
+
+    private final List<Interface> interfaces;
+    final LongAdder entriesParsed = new LongAdder();
+    final LongAdder routesAdded = new LongAdder();
+    final LongAdder routesImproved = new LongAdder(); // a lower metric, from any next hop
+    final LongAdder routesWorsened = new LongAdder(); // a higher metric from the current next hop
+    final LongAdder routesRefreshed = new LongAdder(); // the same route heard again
+    final LongAdder routesExpired = new LongAdder(); // timed out and advertised as unreachable
+    final LongAdder routesDeleted = new LongAdder(); // unreachable routes removed by garbage collection
+    final LongAdder triggeredUpdates = new LongAdder();
+    final LongAdder periodicUpdates = new LongAdder();
+    final LongAdder requestsSent = new LongAdder();
+    final LongAdder requestsReceived = new LongAdder();
+    final LongAdder neighboursLost = new LongAdder(); // neighbours declared down when their hellos stopped
+    final LatencyHistogram responseLatency = new LatencyHistogram();
+
+    /**
+     * constructor for the counters of a router
+     *
+     * @param interfaces - the interfaces of the router, read for the packet counts
+     */
+    RouterStats(List<Interface> interfaces) {
+        this.interfaces = interfaces;
+    }
+
+    @Override
+    public long getPacketsReceived() {
+        return interfaces.stream().mapToLong(Interface::packetsReceived).sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return interfaces.stream().mapToLong(Interface::bytesReceived).sum();
+    }
+
+    @Override
+    public long getPacketsSent() {
+        return interfaces.stream().mapToLong(Interface::packetsSent).sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return interfaces.stream().mapToLong(Interface::bytesSent).sum();
+    }
+
+    @Override
+    public long getReceiveDrops() {
+        return interfaces.stream().mapToLong(Interface::drops).sum();
+    }
+
+    @Override
+    public long getEntriesParsed() {
+        return entriesParsed.sum();
+    }
+
+    @Override
+    public long getRoutesAdded() {
+        return routesAdded.sum();
+    }
+
+    @Override
+    public long getRoutesImproved() {
+        return routesImproved.sum();
+    }
+
+    @Override
+    public long getRoutesWorsened() {
+        return routesWorsened.sum();
+    }
+
+    @Override
+    public long getRoutesRefreshed() {
+        return routesRefreshed.sum();
+    }
+
+    @Override
+    public long getRoutesExpired() {
+        return routesExpired.sum();
+    }
+
+    @Override
+    public long getRoutesDeleted() {
+        return routesDeleted.sum();
+    }
+
+    @Override
+    public long getTriggeredUpdates() {
+        return triggeredUpdates.sum();
+    }
+
+    @Override
+    public long getPeriodicUpdates() {
+        return periodicUpdates.sum();
+    }
+
+    @Override
+    public long getRequestsSent() {
+        return requestsSent.sum();
+    }
+
+    @Override
+    public long getRequestsReceived() {
+        return requestsReceived.sum();
+    }
+
+    @Override
+    public long getNeighboursLost() {
+        return neighboursLost.sum();
+    }
+
+    @Override
+    public long getResponsesHandled() {
+        return responseLatency.count();
+    }
+
+    @Override
+    public double getResponseLatencyMean() {
+        return responseLatency.mean();
+    }
+
+    @Override
+    public long getResponseLatencyP50() {
+        return responseLatency.percentile(50);
+    }
+
+    @Override
+    public long getResponseLatencyP99() {
+        return responseLatency.percentile(99);
+    }
+
+    @Override
+    public long getResponseLatencyMax() {
+        return responseLatency.max();
+    }
+
+    /**
+     * a one line summary for the console
+     *
+     * @return the summary
+     */
+    String summary() {
+        return String.format("rx %d pkts/%d B, tx %d pkts/%d B, drops %d, routes +%d ~%d expired %d",
+                getPacketsReceived(), getBytesReceived(), getPacketsSent(), getBytesSent(), getReceiveDrops(),
+                getRoutesAdded(), getRoutesImproved() + getRoutesWorsened(), getRoutesExpired());
+    }
+
+    /**
+     * every counter, one per line, followed by each interface
+     *
+     * @return the report
+     */
+    String report() {
+        StringBuilder x = new StringBuilder();
+        x.append(String.format("packets received \t %d (%d bytes, %d dropped)\n", getPacketsReceived(), getBytesReceived(), getReceiveDrops()));
+        x.append(String.format("packets sent \t\t %d (%d bytes)\n", getPacketsSent(), getBytesSent()));
+        x.append(String.format("updates sent \t\t %d periodic, %d triggered\n", getPeriodicUpdates(), getTriggeredUpdates()));
+        x.append(String.format("requests \t\t %d sent, %d answered\n", getRequestsSent(), getRequestsReceived()));
+        x.append(String.format("neighbours lost \t %d\n", getNeighboursLost()));
+        x.append(String.format("entries parsed \t\t %d\n", getEntriesParsed()));
+        x.append(String.format("routes \t\t\t %d added, %d improved, %d worsened, %d refreshed, %d expired, %d deleted\n",
+                getRoutesAdded(), getRoutesImproved(), getRoutesWorsened(), getRoutesRefreshed(), getRoutesExpired(), getRoutesDeleted()));
+        x.append(String.format("response handling \t %d, mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us\n",
+                getResponsesHandled(), getResponseLatencyMean() / 1000, getResponseLatencyP50() / 1000.0,
+                getResponseLatencyP99() / 1000.0, getResponseLatencyMax() / 1000.0));
+        for (Interface inter : interfaces) {
+            x.append(String.format("  %s:%d \t rx %d pkts/%d B, tx %d pkts/%d B, drops %d%s\n",
+                    inter.getLocalAddress(), inter.getLocalPort(), inter.packetsReceived(), inter.bytesReceived(),
+                    inter.packetsSent(), inter.bytesSent(), inter.drops(), inter.neighbourUp() ? "" : ", neighbour down"));
+        }
+        return x.toString();
+    }
+}
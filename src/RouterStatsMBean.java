@@ -0,0 +1,50 @@
+/**
+ * the counters of a router as seen over JMX, registered by NetworkSimulator as rip2sim:type=Router,id=ID. latencies
+ * are in nanoseconds
+ */
+public interface RouterStatsMBean {
+
+    long getPacketsReceived();
+
+    long getBytesReceived();
+
+    long getPacketsSent();
+
+    long getBytesSent();
+
+    long getReceiveDrops();
+
+    long getEntriesParsed();
+
+    long getRoutesAdded();
+
+    long getRoutesImproved();
+
+    long getRoutesWorsened();
+
+    long getRoutesRefreshed();
+
+    long getRoutesExpired();
+
+    long getRoutesDeleted();
+
+    long getTriggeredUpdates();
+
+    long getPeriodicUpdates();
+
+    long getRequestsSent();
+
+    long getRequestsReceived();
+
+    long getNeighboursLost();
+
+    long getResponsesHandled();
+
+    double getResponseLatencyMean();
+
+    long getResponseLatencyP50();
+
+    long getResponseLatencyP99();
+
+    long getResponseLatencyMax();
+}
@@ -0,0 +1,37 @@
+import java.util.Random;
+
+/**
+ * the clock and task queue a router runs on. every task and timer of a router runs on its scheduler one at a time,
+ * so a router never needs to lock against itself
+ */
+interface Scheduler {
+
+    /**
+     * the current time of the scheduler's clock
+     *
+     * @return the time in milliseconds
+     */
+    long now();
+
+    /**
+     * queues a task to be run on the scheduler
+     *
+     * @param task - the task to run
+     */
+    void execute(Runnable task);
+
+    /**
+     * runs a task on the scheduler after a delay
+     *
+     * @param task  - the task to run
+     * @param delay - the delay in milliseconds
+     */
+    void schedule(Runnable task, long delay);
+
+    /**
+     * the source of randomness for timer jitter, only used from tasks running on the scheduler
+     *
+     * @return the random number generator
+     */
+    Random random();
+}
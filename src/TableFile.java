@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * a routing table kept in a file through a memory mapping so a restarted router can pick up where it left off. the
+ * file is laid out as a rip response, a 4 byte header and then the 20 byte rip entry of every table slot in slot
+ * order, all zeros for a free slot, so it reads back with a RipDecoder. the file is left as it is until the router
+ * has restored what was saved in it, then started over. from then on only the slots that changed since the last
+ * snapshot are copied into the mapping, the operating system writes the pages back in its own time and they
+ * survive the process being killed. only touched on the owning router's scheduler
+ */
+class TableFile {
+
+    private static final int HEADER_SIZE = RipDecoder.HEADER_SIZE;
+    private static final int ENTRY_SIZE = RipDecoder.ENTRY_SIZE;
+    private static final byte[] FREE = new byte[ENTRY_SIZE];
+
+    private final FileChannel channel;
+    private final ByteBuffer saved;
+    private MappedByteBuffer map;
+    private RouteSnapshot written = RouteSnapshot.EMPTY;
+
+    /**
+     * constructor for a table file, reads what a previous run left in it
+     *
+     * @param path - the file, created if it doesn't exist
+     * @throws IOException if the file can't be read
+     */
+    TableFile(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int size = (int) Math.min(channel.size(), Integer.MAX_VALUE);
+        ByteBuffer previous = ByteBuffer.allocate(size);
+        while (previous.hasRemaining() && channel.read(previous, previous.position()) > 0) ;
+        previous.flip();
+        // anything that isn't one of our files is treated as empty
+        boolean valid = previous.limit() >= HEADER_SIZE && previous.get(0) == 2 && previous.get(1) == 2;
+        saved = valid ? previous : ByteBuffer.allocate(0);
+    }
+
+    /**
+     * starts the file over with the table as it is now, call once the saved routes have been restored. until then
+     * the file keeps what the previous run left in it and snapshots aren't written
+     *
+     * @param snapshot - the latest snapshot of the table
+     * @throws IOException if the file can't be mapped
+     */
+    void open(RouteSnapshot snapshot) throws IOException {
+        channel.truncate(0);
+        remap(HEADER_SIZE + Math.max(32, snapshot.limit()) * ENTRY_SIZE);
+        map.put(0, (byte) 2); // command response
+        map.put(1, (byte) 2); // version
+        write(snapshot);
+    }
+
+    /**
+     * the table a previous run left in the file
+     *
+     * @return the saved rip response, from index 0 to its limit, empty if there was nothing to load
+     */
+    ByteBuffer saved() {
+        return saved;
+    }
+
+    /**
+     * copies the slots that changed since the last snapshot written into the file, the ones the table recorded if
+     * that snapshot is the one just before this, a comparison of the two otherwise
+     *
+     * @param snapshot - the latest snapshot of the table
+     */
+    void write(RouteSnapshot snapshot) {
+        if (map == null) return; // not open yet
+        int needed = HEADER_SIZE + snapshot.limit() * ENTRY_SIZE;
+        if (needed > map.capacity()) {
+            try {
+                remap(Math.max(needed, map.capacity() * 2));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        if (snapshot.previous() == written.version()) {
+            for (int slot : snapshot.changed()) write(snapshot, slot);
+        } else {
+            BitSet changed = snapshot.diff(written);
+            for (int slot = changed.nextSetBit(0); slot >= 0; slot = changed.nextSetBit(slot + 1)) {
+                write(snapshot, slot);
+            }
+        }
+        snapshot.pin(); // the latest, kept readable for the comparison in case the next write has to make one
+        if (written != RouteSnapshot.EMPTY) written.unpin();
+        written = snapshot;
+    }
+
+    private void write(RouteSnapshot snapshot, int slot) {
+        map.position(HEADER_SIZE + slot * ENTRY_SIZE);
+        if (snapshot.inUse(slot)) {
+            snapshot.copyEntry(slot, map);
+        } else {
+            map.put(FREE);
+        }
+    }
+
+    private void remap(int size) throws IOException {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size); // grows the file, the new part reads as free slots
+    }
+
+    /**
+     * closes the file, the mapping stays valid until it is collected
+     */
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
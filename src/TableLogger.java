@@ -0,0 +1,138 @@
+import java.io.PrintStream;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * prints the changes to the routing tables of many routers from one background thread. a router that changed only
+ * queues itself, at most once until it is logged, so it never waits on the console. every interval the writer
+ * takes the latest snapshot of each queued router and prints what was added, removed or changed since the last one
+ * it printed, so a burst of changes comes out as one diff per router. if the queue is full the notification is
+ * dropped and the router's next change queues it again
+ */
+class TableLogger implements Runnable {
+
+    private final PrintStream out;
+    private final long interval;
+    private final ArrayBlockingQueue<Router> queue;
+    private final Set<Router> pending = ConcurrentHashMap.newKeySet();
+    private final Map<Router, String> names = new IdentityHashMap<>(); // filled before the routers start
+    private final Map<Router, RouteSnapshot> logged = new IdentityHashMap<>(); // only used by the writer
+    private final LongAdder dropped = new LongAdder();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long droppedReported = 0;
+
+    /**
+     * constructor for a logger, the thread isn't started until start is called
+     *
+     * @param out      - where to print
+     * @param interval - the milliseconds changes are coalesced over
+     * @param capacity - the most routers waiting to be logged
+     */
+    TableLogger(PrintStream out, long interval, int capacity) {
+        this.out = out;
+        this.interval = interval;
+        queue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        thread = new Thread(this, "table-logger");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * names a router in the log and takes its current table as already printed, call before the router starts
+     *
+     * @param router - the router
+     * @param name   - the name to print it under
+     */
+    void register(Router router, String name) {
+        names.put(router, name);
+        logged.put(router, router.acquire());
+    }
+
+    /**
+     * starts the writer thread
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * notes that a router's table changed, safe to call from any thread and never blocks
+     *
+     * @param router - the router that changed
+     */
+    void changed(Router router) {
+        if (pending.add(router) && !queue.offer(router)) {
+            pending.remove(router);
+            dropped.increment();
+        }
+    }
+
+    /**
+     * prints what is still queued and stops the writer thread
+     */
+    void close() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * the writer loop, prints the queued diffs once per interval
+     */
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                // closing, flush what is left
+            }
+            flush();
+        }
+    }
+
+    /**
+     * appends the rows that differ between two snapshots of a router's table
+     */
+    private void append(StringBuilder x, Router router, RouteSnapshot before, RouteSnapshot now, BitSet diff) {
+        x.append(names.getOrDefault(router, "router")).append('\n');
+        for (int slot = diff.nextSetBit(0); slot >= 0; slot = diff.nextSetBit(slot + 1)) {
+            boolean was = before.inUse(slot);
+            boolean is = now.inUse(slot);
+            if (was && is && before.address(slot) == now.address(slot) && before.prefix(slot) == now.prefix(slot)) {
+                x.append("~ ").append(router.rowString(now, slot))
+                        .append(" (was ").append(before.metric(slot)).append(")\n");
+                continue;
+            }
+            if (was) x.append("- ").append(router.rowString(before, slot)).append('\n');
+            if (is) x.append("+ ").append(router.rowString(now, slot)).append('\n');
+        }
+    }
+
+    private void flush() {
+        StringBuilder x = new StringBuilder();
+        Router router;
+        while ((router = queue.poll()) != null) {
+            pending.remove(router); // a change from here on queues the router again
+            RouteSnapshot now = router.acquire();
+            RouteSnapshot before = logged.put(router, now); // pinned until the next one replaces it
+            BitSet diff = now.diff(before == null ? RouteSnapshot.EMPTY : before);
+            if (!diff.isEmpty()) append(x, router, before == null ? RouteSnapshot.EMPTY : before, now, diff);
+            if (before != null) router.release(before);
+        }
+        long drops = dropped.sum();
+        if (drops != droppedReported) {
+            x.append(drops - droppedReported).append(" table changes not logged, the log queue was full\n");
+            droppedReported = drops;
+        }
+        if (x.length() > 0) out.print(x);
+    }
+}
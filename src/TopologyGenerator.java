@@ -0,0 +1,180 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * writes the config files of a generated network, one per router, in the LINK:/NETWORK: format read by
+ * NetworkSimulator. links are in-memory, each router gets its own loopback address 127.x.y.z and numbers the ports
+ * of its links from 10000, and the networks are consecutive /28s out of 10.0.0.0/8
+ */
+public class TopologyGenerator {
+
+    private static final String usage = "java -cp rip2sim.jar TopologyGenerator (ring|grid|random|fattree) routers networksPerRouter directory [seed]";
+    private static final int FIRST_PORT = 10000;
+
+    final String topology;
+    final int routers;
+    final int networks;
+    final ArrayList<int[]> links = new ArrayList<>();
+
+    /**
+     * constructor for a generated network
+     *
+     * @param topology - ring, grid, random or fattree
+     * @param routers  - the number of routers, a fat tree is rounded up to the next complete tree
+     * @param networks - the number of networks attached to each router
+     * @param seed     - the seed for the random graph
+     */
+    TopologyGenerator(String topology, int routers, int networks, long seed) {
+        this.topology = topology;
+        this.networks = networks;
+        switch (topology) {
+            case "ring":
+                this.routers = routers;
+                for (int i = 0; i < routers && routers > 1; i++) {
+                    if (routers > 2 || i == 0) link(i, (i + 1) % routers);
+                }
+                break;
+            case "grid":
+                this.routers = routers;
+                int columns = (int) Math.ceil(Math.sqrt(routers));
+                for (int i = 0; i < routers; i++) {
+                    if ((i + 1) % columns != 0 && i + 1 < routers) link(i, i + 1);
+                    if (i + columns < routers) link(i, i + columns);
+                }
+                break;
+            case "random":
+                this.routers = routers;
+                randomGraph(new Random(seed));
+                break;
+            case "fattree":
+                int k = 2;
+                while (5 * k * k / 4 < routers) k += 2;
+                this.routers = 5 * k * k / 4;
+                fatTree(k);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown topology: " + topology);
+        }
+    }
+
+    /**
+     * a random spanning tree, so the network is connected, plus half as many extra links again
+     */
+    private void randomGraph(Random random) {
+        HashSet<Long> seen = new HashSet<>();
+        for (int i = 1; i < routers; i++) {
+            int j = random.nextInt(i);
+            seen.add((long) j << 32 | i);
+            link(j, i);
+        }
+        long possible = (long) routers * (routers - 1) / 2;
+        for (int extra = Math.min(routers / 2, (int) (possible - links.size())); extra > 0; ) {
+            int a = random.nextInt(routers);
+            int b = random.nextInt(routers);
+            if (a == b || !seen.add((long) Math.min(a, b) << 32 | Math.max(a, b))) continue;
+            link(a, b);
+            extra--;
+        }
+    }
+
+    /**
+     * a k-ary fat tree, (k/2)^2 core routers then k pods of k/2 aggregation and k/2 edge routers. every edge router
+     * links to every aggregation router of its pod, and the j-th aggregation router of each pod links to the j-th
+     * group of k/2 core routers
+     */
+    private void fatTree(int k) {
+        int half = k / 2;
+        int core = half * half;
+        for (int pod = 0; pod < k; pod++) {
+            int aggregation = core + pod * k;
+            int edge = aggregation + half;
+            for (int a = 0; a < half; a++) {
+                for (int e = 0; e < half; e++) link(edge + e, aggregation + a);
+                for (int c = 0; c < half; c++) link(aggregation + a, a * half + c);
+            }
+        }
+    }
+
+    private void link(int a, int b) {
+        links.add(new int[]{a, b});
+    }
+
+    /**
+     * the loopback address of a router
+     */
+    private static String address(int router) {
+        int a = router + 1;
+        return "127." + ((a >> 16) & 0xFF) + "." + ((a >> 8) & 0xFF) + "." + (a & 0xFF);
+    }
+
+    /**
+     * the network of the given index, a /28 out of 10.0.0.0/8
+     */
+    private static String network(int index) {
+        int a = 0x0A000000 + (index << 4);
+        return (a >>> 24) + "." + ((a >> 16) & 0xFF) + "." + ((a >> 8) & 0xFF) + "." + (a & 0xFF) + "/28";
+    }
+
+    /**
+     * the config lines of every router
+     *
+     * @return the lines of each router's config
+     */
+    ArrayList<ArrayList<String>> configs() {
+        ArrayList<ArrayList<String>> configs = new ArrayList<>();
+        int[] ports = new int[routers];
+        for (int i = 0; i < routers; i++) {
+            configs.add(new ArrayList<>());
+            ports[i] = FIRST_PORT;
+        }
+        for (int[] link : links) {
+            int a = link[0];
+            int b = link[1];
+            String local = address(a) + ":" + ports[a]++;
+            String remote = address(b) + ":" + ports[b]++;
+            configs.get(a).add("LINK: " + local + " " + remote + " transport=mem");
+            configs.get(b).add("LINK: " + remote + " " + local + " transport=mem");
+        }
+        for (int i = 0; i < routers; i++) {
+            for (int j = 0; j < networks; j++) configs.get(i).add("NETWORK: " + network(i * networks + j));
+        }
+        return configs;
+    }
+
+    /**
+     * writes one config file per router
+     *
+     * @param directory - the directory to write into, created if needed
+     * @throws FileNotFoundException if a file can't be written
+     */
+    void write(File directory) throws FileNotFoundException {
+        directory.mkdirs();
+        ArrayList<ArrayList<String>> configs = configs();
+        int digits = String.valueOf(routers - 1).length();
+        for (int i = 0; i < routers; i++) {
+            try (PrintWriter out = new PrintWriter(new File(directory, String.format("router%0" + digits + "d.txt", i)))) {
+                configs.get(i).forEach(out::println);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+            TopologyGenerator network = new TopologyGenerator(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]), seed);
+            network.write(new File(args[3]));
+            System.out.printf("%s: %d routers, %d links, %d networks written to %s\n", network.topology,
+                    network.routers, network.links.size(), network.routers * network.networks, args[3]);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(usage);
+            System.exit(1);
+        } catch (IllegalArgumentException | FileNotFoundException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * the link an interface sends and receives its datagrams over
+ */
+interface Transport {
+
+    /**
+     * starts delivering datagrams from the remote, must be called on the owning router's scheduler
+     *
+     * @param loop      - the scheduler of the owning router
+     * @param ring      - the receive ring to deliver datagrams into
+     * @param onReceive - called on the scheduler after datagrams have been delivered
+     * @throws IOException if the link can't be started
+     */
+    void open(Scheduler loop, ReceiveRing ring, Runnable onReceive) throws IOException;
+
+    /**
+     * how many datagrams the receive ring of the interface should hold, enough for the bursts that have nowhere else
+     * to wait
+     *
+     * @return the ring size
+     */
+    int receiveBuffers();
+
+    /**
+     * sends a datagram to the remote, the data is copied before this returns
+     *
+     * @param data - the datagram from its position to its limit, the position is left unchanged
+     */
+    void send(ByteBuffer data);
+
+    /**
+     * stops or restarts delivering datagrams, what can't be delivered while paused may be queued or dropped
+     *
+     * @param paused - true to stop delivering
+     */
+    void setPaused(boolean paused);
+
+    /**
+     * closes the link
+     */
+    void close();
+
+    /**
+     * the local address of the link
+     *
+     * @return the ipv4 address as an int
+     */
+    int localAddress();
+
+    /**
+     * the local port of the link
+     *
+     * @return the port
+     */
+    int localPort();
+}
@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+
+/**
+ * a link over a udp socket, multiplexed on the owning router's event loop. the socket is only bound when the owning
+ * router starts, so loading a big topology doesn't hold thousands of sockets before anything runs
+ */
+class UdpTransport implements Transport {
+
+    private DatagramChannel channel; // null until opened
+    private final InetSocketAddress local;
+    private final InetSocketAddress remote;
+    private final int localAddress;
+    private final int localPort;
+    private SelectionKey key;
+
+    /**
+     * constructor for a udp link, the socket is bound by open
+     *
+     * @param localAddress  - the local address to bind
+     * @param localPort     - the local port to bind
+     * @param remoteAddress - the remote address to send to and accept datagrams from
+     * @param remotePort    - the remote port to send to and accept datagrams from
+     * @throws IOException if an address isn't a valid ipv4 address
+     */
+    UdpTransport(int localAddress, int localPort, int remoteAddress, int remotePort) throws IOException {
+        this.localAddress = localAddress;
+        this.localPort = localPort;
+        local = new InetSocketAddress(InetAddress.getByAddress(bytes(localAddress)), localPort);
+        remote = new InetSocketAddress(InetAddress.getByAddress(bytes(remoteAddress)), remotePort);
+    }
+
+    private static byte[] bytes(int address) {
+        return new byte[]{(byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address};
+    }
+
+    @Override
+    public void open(Scheduler loop, ReceiveRing ring, Runnable onReceive) throws IOException {
+        if (!(loop instanceof EventLoop)) throw new IOException("udp links need a real time event loop");
+        channel = DatagramChannel.open();
+        try {
+            channel.bind(local);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        key = ((EventLoop) loop).register(channel, () -> {
+            fill(ring);
+            onReceive.run();
+        });
+    }
+
+    @Override
+    public int receiveBuffers() {
+        return 16; // the socket buffer holds the rest of a burst until the ring drains
+    }
+
+    /**
+     * moves the datagrams waiting on the channel into the receive ring, datagrams from anyone but the remote are
+     * dropped. stops early when the ring is full, the rest wait in the socket buffer for the next call
+     *
+     * @param ring - the ring to fill
+     */
+    private void fill(ReceiveRing ring) {
+        try {
+            ByteBuffer buffer;
+            while ((buffer = ring.claim()) != null) {
+                SocketAddress from = channel.receive(buffer);
+                if (from == null) return;
+                if (from.equals(remote)) {
+                    buffer.flip();
+                    ring.publish();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void send(ByteBuffer data) {
+        if (channel == null) return;
+        int position = data.position();
+        try {
+            channel.send(data, remote);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        data.position(position);
+    }
+
+    @Override
+    public void setPaused(boolean paused) {
+        if (key != null && key.isValid()) key.interestOps(paused ? 0 : SelectionKey.OP_READ);
+    }
+
+    @Override
+    public void close() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public int localAddress() {
+        return localAddress;
+    }
+
+    @Override
+    public int localPort() {
+        return localPort;
+    }
+}
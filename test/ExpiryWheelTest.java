@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * checks the timing wheel against a map of deadlines. a slot is due in the first sweep of a tick past both its
+ * deadline's tick and the last tick swept when it was scheduled, and has to expire by then. it may expire sooner
+ * when an advance sweeps its bucket for an earlier turn, but never before its deadline
+ */
+class ExpiryWheelTest {
+
+    private static final long TICK = 10;
+
+    @Test
+    void expiresWhatTheModelSaysIsDue() {
+        Random random = new Random(5);
+        ExpiryWheel wheel = new ExpiryWheel(TICK, 8, 0); // 80 ms a turn, deadlines reach many turns out
+        HashMap<Integer, long[]> model = new HashMap<>(); // slot -> deadline, tick of the bucket it is due in
+        long now = 0;
+        long swept = -1;
+        for (int step = 0; step < 20000; step++) {
+            int slot = random.nextInt(300);
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1: {
+                    long when = now - 20 + random.nextInt(600);
+                    wheel.schedule(slot, when);
+                    model.put(slot, new long[]{when, Math.max(Math.floorDiv(when, TICK), swept + 1)});
+                    break;
+                }
+                case 2:
+                    wheel.cancel(slot);
+                    model.remove(slot);
+                    break;
+                default: {
+                    now += random.nextInt(random.nextInt(10) == 0 ? 1000 : 30);
+                    long nowTick = now / TICK;
+                    long at = now;
+                    ArrayList<Integer> due = new ArrayList<>();
+                    model.forEach((s, deadline) -> {
+                        if (deadline[0] <= at && deadline[1] < nowTick) due.add(s);
+                    });
+                    ArrayList<Integer> expired = new ArrayList<>();
+                    wheel.advance(now, s -> {
+                        expired.add(s);
+                        // refreshed from the callback, like a route that is heard again
+                        if (s % 3 == 0) wheel.schedule(s, at + 1 + s);
+                    });
+                    assertTrue(expired.containsAll(due));
+                    for (int s : expired) {
+                        assertTrue(model.get(s)[0] <= now);
+                        model.remove(s);
+                        if (s % 3 == 0) model.put(s, new long[]{now + 1 + s, (now + 1 + s) / TICK});
+                    }
+                    swept = nowTick - 1;
+                }
+            }
+            assertEquals(model.size(), wheel.size());
+        }
+    }
+
+    @Test
+    void expiresAtMostOneTickLate() {
+        ExpiryWheel wheel = new ExpiryWheel(TICK, 64, 0);
+        for (int slot = 0; slot < 100; slot++) wheel.schedule(slot, 7 * slot);
+        long[] expiredAt = new long[100];
+        for (long now = 0; now <= 1000; now++) {
+            long at = now;
+            wheel.advance(now, slot -> expiredAt[slot] = at);
+        }
+        for (int slot = 0; slot < 100; slot++) {
+            assertTrue(expiredAt[slot] >= 7 * slot);
+            assertTrue(expiredAt[slot] <= 7 * slot + TICK);
+        }
+        assertEquals(0, wheel.size());
+    }
+}
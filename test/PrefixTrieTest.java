@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * checks longest prefix match against a brute force search of a map of the same prefixes, while prefixes come and
+ * go, nodes are collapsed and reused, and the trie grows past the size that builds its first stride and shrinks
+ * back under the size that drops it. snapshots have to keep answering as they did when they were taken
+ */
+class PrefixTrieTest {
+
+    @Test
+    void matchesBruteForceThroughChurn() {
+        Random random = new Random(7);
+        PrefixTrie trie = new PrefixTrie();
+        HashMap<Long, Integer> model = new HashMap<>();
+        ArrayList<Long> keys = new ArrayList<>();
+        for (int step = 0; step < 120000; step++) {
+            boolean growing = step % 40000 < 25000;
+            if (keys.isEmpty() || random.nextInt(8) < (growing ? 7 : 1)) {
+                int length = random.nextInt(10) == 0 ? random.nextInt(17) : 16 + random.nextInt(17);
+                // a dense corner of the space as well, so prefixes nest and share nodes
+                int address = random.nextInt(4) == 0 ? 0x0A000000 | random.nextInt(1 << 20) : random.nextInt();
+                address &= PrefixTrie.mask(length);
+                long key = key(address, length);
+                Integer previous = model.put(key, step);
+                if (previous == null) keys.add(key);
+                assertEquals(previous == null ? PrefixTrie.NIL : previous, trie.put(address, length, step));
+            } else {
+                long key = keys.remove(random.nextInt(keys.size()));
+                int value = model.remove(key);
+                assertEquals(value, trie.remove((int) (key >>> 8), (int) (key & 0xFF)));
+                assertEquals(PrefixTrie.NIL, trie.remove((int) (key >>> 8), (int) (key & 0xFF)));
+            }
+            assertEquals(model.size(), trie.size());
+            if (step % 100 == 0) {
+                for (int i = 0; i < 50; i++) {
+                    int address = (i & 1) == 0 ? random.nextInt()
+                            : (int) (keys.get(random.nextInt(keys.size())) >>> 8) | random.nextInt(1 << 12);
+                    assertEquals(lookup(model, address), trie.lookup(address));
+                }
+            }
+        }
+    }
+
+    @Test
+    void emptiesCompletely() {
+        PrefixTrie trie = new PrefixTrie();
+        Random random = new Random(3);
+        int[] addresses = new int[20000];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = random.nextInt() & PrefixTrie.mask(24);
+            trie.put(addresses[i], 24, i);
+        }
+        trie.put(0, 0, 99);
+        for (int address : addresses) trie.remove(address, 24);
+        assertEquals(1, trie.size());
+        for (int address : addresses) assertEquals(99, trie.lookup(address));
+        trie.remove(0, 0);
+        assertEquals(0, trie.size());
+        for (int address : addresses) assertEquals(PrefixTrie.NIL, trie.lookup(address));
+        trie.put(addresses[0], 24, 5);
+        assertEquals(5, trie.lookup(addresses[0] | 0x7F));
+    }
+
+    @Test
+    void snapshotsKeepTheirPrefixes() {
+        Random random = new Random(9);
+        PrefixTrie trie = new PrefixTrie();
+        HashMap<Long, Integer> model = new HashMap<>();
+        ArrayList<Long> keys = new ArrayList<>();
+        ArrayList<PrefixTrie> snapshots = new ArrayList<>();
+        ArrayList<HashMap<Long, Integer>> models = new ArrayList<>();
+        for (int round = 0; round < 40; round++) {
+            // big enough in the middle rounds to build the first stride, so its pages are copied on write as well
+            int changes = round < 20 ? 2000 : 200;
+            for (int i = 0; i < changes; i++) {
+                if (keys.isEmpty() || random.nextInt(4) != 0 && round < 20) {
+                    int length = 8 + random.nextInt(25);
+                    int address = random.nextInt() & PrefixTrie.mask(length);
+                    if (model.put(key(address, length), round) == null) keys.add(key(address, length));
+                    trie.put(address, length, round);
+                } else {
+                    long key = keys.remove(random.nextInt(keys.size()));
+                    model.remove(key);
+                    trie.remove((int) (key >>> 8), (int) (key & 0xFF));
+                }
+            }
+            snapshots.add(trie.snapshot());
+            models.add(new HashMap<>(model));
+        }
+        for (int s = 0; s < snapshots.size(); s++) {
+            PrefixTrie snapshot = snapshots.get(s);
+            assertEquals(models.get(s).size(), snapshot.size());
+            for (int i = 0; i < 2000; i++) {
+                int address = random.nextInt();
+                assertEquals(lookup(models.get(s), address), snapshot.lookup(address));
+            }
+        }
+        assertThrows(IllegalStateException.class, () -> snapshots.get(0).put(0, 0, 1));
+    }
+
+    private static long key(int address, int length) {
+        return (address & 0xFFFFFFFFL) << 8 | length;
+    }
+
+    private static int lookup(HashMap<Long, Integer> model, int address) {
+        for (int length = 32; length >= 0; length--) {
+            Integer value = model.get(key(address & PrefixTrie.mask(length), length));
+            if (value != null) return value;
+        }
+        return PrefixTrie.NIL;
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Timeout.ThreadMode.SEPARATE_THREAD;
+
+/**
+ * checks the ring against a bounded queue on one thread, then hands a long numbered stream across two threads
+ */
+class ReceiveRingTest {
+
+    @Test
+    void behavesLikeABoundedQueue() {
+        Random random = new Random(2);
+        ReceiveRing ring = new ReceiveRing(6, 8); // rounded up to 8 buffers
+        ArrayDeque<Long> model = new ArrayDeque<>();
+        long next = 0;
+        long drops = 0;
+        for (int step = 0; step < 100000; step++) {
+            if (random.nextBoolean()) {
+                ByteBuffer buffer = ring.claim();
+                if (model.size() == 8) {
+                    assertNull(buffer);
+                    ring.drop();
+                    drops++;
+                } else {
+                    assertNotNull(buffer);
+                    assertEquals(0, buffer.position());
+                    buffer.putLong(next).flip();
+                    ring.publish();
+                    model.add(next++);
+                }
+            } else {
+                ByteBuffer buffer = ring.peek();
+                if (model.isEmpty()) {
+                    assertNull(buffer);
+                } else {
+                    assertEquals(model.poll(), buffer.getLong(0));
+                    ring.release();
+                }
+            }
+        }
+        assertEquals(drops, ring.drops());
+    }
+
+    @Test
+    @Timeout(value = 60, threadMode = SEPARATE_THREAD)
+    void handsOverInOrderAcrossThreads() throws InterruptedException {
+        ReceiveRing ring = new ReceiveRing(16, 8);
+        long count = 500_000;
+        Thread producer = new Thread(() -> {
+            for (long i = 0; i < count; i++) {
+                ByteBuffer buffer;
+                while ((buffer = ring.claim()) == null) Thread.yield();
+                buffer.putLong(i).flip();
+                ring.publish();
+            }
+        });
+        producer.start();
+        for (long i = 0; i < count; i++) {
+            ByteBuffer buffer;
+            while ((buffer = ring.peek()) == null) Thread.yield();
+            assertEquals(i, buffer.getLong(0));
+            ring.release();
+        }
+        producer.join();
+        assertNull(ring.peek());
+        assertEquals(0, ring.drops());
+    }
+}
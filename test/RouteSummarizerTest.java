@@ -0,0 +1,96 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * checks that the summaries of random tables cover exactly the addresses the reachable routes of each next hop
+ * cover, with a metric no better than any route they stand for, and that a summary that goes away is withdrawn
+ */
+class RouteSummarizerTest {
+
+    private static final int BASE = 0x0A000000; // the routes are all inside 10.0.0.0/16
+    private static final int BLOCK = 26; // and no longer than /26, so /26 blocks are the unit of coverage
+    private static final int BLOCKS = 1 << (BLOCK - 16);
+
+    @Test
+    void coversExactlyTheRoutes() {
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            RouteTable table = table();
+            int routes = 1 + random.nextInt(300);
+            for (int i = 0; i < routes; i++) {
+                int length = 18 + random.nextInt(BLOCK - 17);
+                int address = (BASE | random.nextInt(1 << 16)) & PrefixTrie.mask(length);
+                if (table.find(address, length) != RouteTable.NONE) continue;
+                table.add(address, length, 1 + random.nextInt(16), random.nextInt(2), 0);
+            }
+            RouteSnapshot snapshot = table.snapshot();
+            RouteSummarizer summarizer = new RouteSummarizer();
+            summarizer.summarize(snapshot);
+
+            for (int hop = 0; hop < 2; hop++) {
+                for (int block = 0; block < BLOCKS; block++) {
+                    int address = BASE | block << (32 - BLOCK);
+                    int worst = -1;
+                    for (int slot = 0; slot < snapshot.limit(); slot++) {
+                        if (snapshot.inUse(slot) && snapshot.hop(slot) == hop && snapshot.metric(slot) < 16
+                                && covers(snapshot.address(slot), snapshot.prefix(slot), address)) {
+                            worst = Math.max(worst, snapshot.metric(slot));
+                        }
+                    }
+                    int summary = -1;
+                    for (int i = 0; i < summarizer.count; i++) {
+                        if (summarizer.hop[i] == hop && summarizer.metric[i] < 16
+                                && covers(summarizer.address[i], summarizer.length[i], address)) {
+                            summary = summarizer.metric[i];
+                        }
+                    }
+                    assertEquals(worst >= 0, summary >= 0, "coverage of block " + block + " through hop " + hop);
+                    if (worst >= 0) assertTrue(summary >= worst);
+                }
+            }
+        }
+    }
+
+    @Test
+    void mergesHalvesAndWithdrawsWhatIsGone() {
+        RouteTable table = table();
+        int low = table.add(0x0A000000, 25, 2, 0, 0);
+        table.add(0x0A000080, 25, 3, 0, 0);
+        table.add(0x0A000100, 24, 4, 1, 0); // the next /24 but another hop, stays apart
+        table.add(0x0A000200, 24, 16, 0, 0); // unreachable, passed through to be poisoned
+        RouteSummarizer summarizer = new RouteSummarizer();
+        summarizer.summarize(table.snapshot());
+        assertEquals(3, summarizer.count);
+        assertTrue(contains(summarizer, 0x0A000000, 24, 3, 0));
+        assertTrue(contains(summarizer, 0x0A000100, 24, 4, 1));
+        assertTrue(contains(summarizer, 0x0A000200, 24, 16, 0));
+
+        table.remove(low);
+        summarizer.summarize(table.snapshot());
+        assertTrue(contains(summarizer, 0x0A000080, 25, 3, 0));
+        assertTrue(contains(summarizer, 0x0A000000, 24, 16, 0)); // the summary is withdrawn
+    }
+
+    private static RouteTable table() {
+        RouteTable table = new RouteTable(16);
+        table.defineHop(0, 0x7F000001, 20000);
+        table.defineHop(1, 0x7F000001, 20001);
+        return table;
+    }
+
+    private static boolean covers(int network, int length, int address) {
+        return ((network ^ address) & PrefixTrie.mask(length)) == 0;
+    }
+
+    private static boolean contains(RouteSummarizer summarizer, int address, int length, int metric, int hop) {
+        for (int i = 0; i < summarizer.count; i++) {
+            if (summarizer.address[i] == address && summarizer.length[i] == length
+                    && summarizer.metric[i] == metric && summarizer.hop[i] == hop) return true;
+        }
+        return false;
+    }
+}
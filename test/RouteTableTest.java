@@ -0,0 +1,156 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * checks the routing table against a hash map of the same rows, through enough churn that the index grows and
+ * removals shift probe runs back over each other, and off the heap keeps the pages of pinned snapshots intact while
+ * it reuses the others
+ */
+class RouteTableTest {
+
+    @Test
+    void matchesMapThroughChurn() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            Random random = new Random(1);
+            RouteTable table = new RouteTable(4, offHeap);
+            table.defineHop(0, 0x7F000001, 20000);
+            table.defineHop(1, 0x7F000001, 20001);
+            HashMap<Long, int[]> model = new HashMap<>(); // key -> metric, hop
+            ArrayList<Long> keys = new ArrayList<>();
+            for (int step = 0; step < 40000; step++) {
+                // few distinct prefixes, so the index holds long probe runs that removals have to shift back
+                int address = random.nextInt(600) << 8;
+                int prefix = 24;
+                long key = RouteTable.key(address, prefix);
+                int slot = table.find(address, prefix);
+                int metric = 1 + random.nextInt(16);
+                int hop = random.nextInt(2);
+                if (step > 20000 && !keys.isEmpty() && random.nextBoolean()) {
+                    long victim = keys.remove(random.nextInt(keys.size()));
+                    table.remove(table.find((int) (victim >>> 8), (int) (victim & 0xFF)));
+                    model.remove(victim);
+                } else if (slot == RouteTable.NONE) {
+                    assertNull(model.get(key));
+                    table.add(address, prefix, metric, hop, step);
+                    model.put(key, new int[]{metric, hop});
+                    keys.add(key);
+                } else {
+                    table.set(slot, metric, hop, step);
+                    model.put(key, new int[]{metric, hop});
+                }
+                if (step % 1000 == 0) check(table, model);
+            }
+            check(table, model);
+        }
+    }
+
+    @Test
+    void snapshotKeepsItsRowsAndListsTheChangedSlots() {
+        RouteTable table = new RouteTable(4);
+        table.defineHop(0, 0x7F000001, 20000);
+        for (int i = 0; i < 1000; i++) table.add(i << 8, 24, 2, 0, 0);
+        RouteSnapshot before = table.snapshot();
+
+        table.set(3, 5, 0, 1);
+        table.set(700, 7, 0, 1);
+        table.set(700, 8, 0, 1);
+        table.set(900, 2, 0, 99); // only the time changes, not part of a snapshot
+        table.remove(10);
+        int added = table.add(5000 << 8, 24, 4, 0, 1);
+        RouteSnapshot after = table.snapshot();
+
+        assertEquals(2, before.metric(3));
+        assertEquals(2, before.metric(700));
+        assertTrue(before.inUse(10));
+        assertEquals(8, after.metric(700));
+        assertEquals(10, added); // the freed slot is handed out again
+        assertEquals(5000 << 8, after.address(10));
+        assertEquals(before.version(), after.previous());
+
+        BitSet diff = after.diff(before);
+        assertArrayEquals(diff.stream().toArray(), after.changed());
+        assertArrayEquals(new int[]{3, 10, 700}, after.changed());
+        assertEquals(0, table.snapshot().changed().length);
+    }
+
+    @Test
+    void pinnedSnapshotsSurvivePageReuse() {
+        Random random = new Random(4);
+        RouteTable table = new RouteTable(4, true);
+        table.defineHop(0, 0x7F000001, 20000);
+        for (int i = 0; i < 2000; i++) table.add(i << 8, 24, 1, 0, 0);
+        ArrayList<RouteSnapshot> pinned = new ArrayList<>();
+        ArrayList<int[]> metrics = new ArrayList<>();
+        for (int round = 0; round < 300; round++) {
+            for (int i = 0; i < 50; i++) table.set(random.nextInt(2000), 1 + random.nextInt(15), 0, round);
+            RouteSnapshot snapshot = table.snapshot();
+            if (random.nextInt(5) == 0) {
+                // pinned while it is the newest, like Router.acquire, and checked against what it held then
+                assertTrue(snapshot.pin());
+                pinned.add(snapshot);
+                int[] copy = new int[2000];
+                for (int slot = 0; slot < copy.length; slot++) copy[slot] = table.metric(slot);
+                metrics.add(copy);
+            }
+            if (!pinned.isEmpty() && random.nextInt(4) == 0) {
+                int i = random.nextInt(pinned.size());
+                pinned.remove(i).unpin();
+                metrics.remove(i);
+            }
+            for (int i = 0; i < pinned.size(); i++) {
+                for (int slot = 0; slot < 2000; slot += 7) {
+                    assertEquals(metrics.get(i)[slot], pinned.get(i).metric(slot));
+                }
+            }
+        }
+        RouteSnapshot older = table.snapshot();
+        table.set(0, 9, 0, 0);
+        table.snapshot();
+        assertFalse(older.pin()); // reclaimed once a newer one was taken, its pages may be in use again
+    }
+
+    @Test
+    void refreshKeepsTheVersion() {
+        RouteTable table = new RouteTable(4);
+        table.defineHop(0, 0x7F000001, 20000);
+        int slot = table.add(0x0A000000, 8, 3, 0, 0);
+        long version = table.version();
+        table.set(slot, 3, 0, 50);
+        assertEquals(version, table.version());
+        assertEquals(50, table.timestamp(slot));
+        table.set(slot, 4, 0, 60);
+        assertNotEquals(version, table.version());
+    }
+
+    private static void check(RouteTable table, HashMap<Long, int[]> model) {
+        assertEquals(model.size(), table.size());
+        int inUse = 0;
+        for (int slot = 0; slot < table.limit(); slot++) {
+            if (!table.inUse(slot)) continue;
+            inUse++;
+            int[] row = model.get(RouteTable.key(table.address(slot), table.prefix(slot)));
+            assertEquals(row[0], table.metric(slot));
+            assertEquals(row[1], table.hop(slot));
+        }
+        assertEquals(model.size(), inUse);
+        for (long key : model.keySet()) {
+            int slot = table.find((int) (key >>> 8), (int) (key & 0xFF));
+            assertNotEquals(RouteTable.NONE, slot);
+            assertEquals(key, RouteTable.key(table.address(slot), table.prefix(slot)));
+        }
+        for (int address = 600; address < 700; address++) {
+            assertEquals(RouteTable.NONE, table.find(address << 8, 24));
+        }
+    }
+}
@@ -0,0 +1,294 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * runs small topologies of routers over in-memory links on a virtual clock with the RFC timers, and checks what the
+ * protocol does end to end: triggered updates, answers to requests, hellos, warm restarts and summaries
+ */
+class RouterTest {
+
+    private static final String HOST = "127.0.0.1";
+    private static final int INFINITY = 16;
+    private static int nextPort = 30000; // every link gets endpoints of its own, the in-memory registry is global
+    private final DiscreteEventScheduler scheduler = new DiscreteEventScheduler(3);
+    private final List<Router> started = new ArrayList<>();
+
+    @BeforeEach
+    void timers() {
+        Router.setTimers(RipTimers.RFC);
+    }
+
+    @AfterEach
+    void stop() {
+        started.forEach(Router::kill);
+        scheduler.run(scheduler.now());
+        Router.setTimers(RipTimers.SCALED);
+    }
+
+    @Test
+    void triggeredUpdateCarriesAnExpiredRoute() {
+        Router[] line = line(3);
+        start(line);
+        scheduler.run(10000);
+        assertEquals(3, metric(line[0], network(2)));
+
+        long triggered = line[1].stats().triggeredUpdates.sum();
+        line[2].kill();
+        long expired = -1;
+        long heard = -1;
+        for (long t = scheduler.now(); t < 400000 && heard < 0; t += 100) {
+            scheduler.run(t);
+            if (expired < 0 && metric(line[1], network(2)) == INFINITY) expired = t;
+            if (heard < 0 && metric(line[0], network(2)) == INFINITY) heard = t;
+        }
+        assertTrue(expired > 0);
+        // the middle router tells its other neighbour within the triggered update hold down, not the update period
+        assertTrue(heard - expired <= RipTimers.RFC.triggerMax, "heard " + (heard - expired) + " ms after expiry");
+        assertTrue(line[1].stats().triggeredUpdates.sum() > triggered);
+    }
+
+    @Test
+    void answersRequests() {
+        Router router = router(network(0), network(1));
+        int port = nextPort;
+        nextPort += 2;
+        router.newInterface(HOST + ":" + port, HOST + ":" + (port + 1), "transport=mem");
+        Probe probe = new Probe(port + 1, port);
+        start(router);
+        scheduler.run(1000);
+        probe.received();
+
+        // one entry with family 0 and metric 16 asks for the whole table
+        probe.send(request(0, 0, 0));
+        scheduler.run(scheduler.now());
+        List<int[]> whole = probe.received();
+        assertEquals(2, whole.size());
+        assertTrue(whole.stream().anyMatch(entry -> entry[0] == network(1) && entry[2] == 1));
+
+        // anything else gets its own entries back, metric 16 for a network the router doesn't know
+        probe.send(request(RipDecoder.AF_INET, network(1), network(7)));
+        scheduler.run(scheduler.now());
+        List<int[]> answer = probe.received();
+        assertEquals(2, answer.size());
+        assertEquals(network(1), answer.get(0)[0]);
+        assertEquals(1, answer.get(0)[2]);
+        assertEquals(network(7), answer.get(1)[0]);
+        assertEquals(INFINITY, answer.get(1)[2]);
+        assertEquals(2, router.stats().requestsReceived.sum());
+        probe.close();
+    }
+
+    @Test
+    void helloDeclaresASilentNeighbourDown() {
+        Router[] line = line(2, "hello=100", "detect=3");
+        start(line);
+        scheduler.run(5000);
+        assertEquals(2, metric(line[0], network(1)));
+
+        line[1].suspend();
+        scheduler.run(5500);
+        assertFalse(line[0].interfaces().get(0).neighbourUp());
+        assertEquals(INFINITY, metric(line[0], network(1)));
+        assertEquals(1, line[0].stats().neighboursLost.sum());
+
+        // the first datagram after the silence brings it back, with a request for the whole table
+        line[1].resume();
+        scheduler.run(6000);
+        assertTrue(line[0].interfaces().get(0).neighbourUp());
+        assertEquals(2, metric(line[0], network(1)));
+    }
+
+    @Test
+    void helloOnOneEndDoesNotFlap() {
+        Router[] routers = {router(network(0)), router(network(1))};
+        link(routers[0], routers[1], new String[]{"hello=100", "detect=3"}, new String[0]);
+        start(routers);
+        for (long t = 1000; t <= 200000; t += 1000) {
+            scheduler.run(t);
+            assertEquals(2, metric(routers[0], network(1)), "at " + t + " ms");
+        }
+        assertEquals(0, routers[0].stats().neighboursLost.sum());
+    }
+
+    @Test
+    void warmRestartKeepsLearnedRoutes(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("router0.rip");
+        int port = nextPort;
+        Router[] line = line(2);
+        line[0].persist(file);
+        start(line);
+        scheduler.run(10000);
+        assertEquals(2, metric(line[0], network(1)));
+        line[0].kill();
+        line[1].kill();
+        scheduler.run(scheduler.now());
+
+        // the same router again, with its neighbour gone for good
+        Router again = router(network(0));
+        again.newInterface(HOST + ":" + port, HOST + ":" + (port + 1), "transport=mem");
+        again.persist(file);
+        long restart = scheduler.now();
+        start(again);
+        scheduler.run(restart);
+        assertEquals(2, metric(again, network(1)));
+        // restored routes are aged to two update periods before their timeout, which nothing refreshes here
+        scheduler.run(restart + 2 * RipTimers.RFC.update - RipTimers.RFC.tick);
+        assertEquals(2, metric(again, network(1)));
+        scheduler.run(restart + 2 * RipTimers.RFC.update + 2 * RipTimers.RFC.tick);
+        assertEquals(INFINITY, metric(again, network(1)));
+    }
+
+    @Test
+    void summarizedLinkAdvertisesTheSummary() {
+        Router edge = new Router();
+        edge.newSubnetEntry(0x0A000000, 25, 0);
+        edge.newSubnetEntry(0x0A000080, 25, 0);
+        edge.newSubnetEntry(0x0A000100, 25, 0);
+        Router core = router(network(9));
+        link(edge, core, new String[]{"summarize"}, new String[0]);
+        start(edge, core);
+        scheduler.run(10000);
+        // the two halves of 10.0.0.0/24 go out as the /24, the lone /25 as itself
+        assertEquals(2, metric(core, network(0), 24));
+        assertEquals(-1, metric(core, 0x0A000000, 25));
+        assertEquals(-1, metric(core, 0x0A000080, 25));
+        assertEquals(2, metric(core, 0x0A000100, 25));
+        // and the summary is only on the wire, the edge router keeps its own routes
+        assertEquals(1, metric(edge, 0x0A000080, 25));
+        assertEquals(-1, metric(edge, network(0), 24));
+    }
+
+    /**
+     * routers in a line, each with its own /24 and linked to the next, not started yet
+     */
+    private static Router[] line(int count, String... options) {
+        Router[] routers = new Router[count];
+        for (int i = 0; i < count; i++) routers[i] = router(network(i));
+        for (int i = 0; i + 1 < count; i++) link(routers[i], routers[i + 1], options, options);
+        return routers;
+    }
+
+    /**
+     * a router with directly connected /24s
+     */
+    private static Router router(int... networks) {
+        Router router = new Router();
+        for (int network : networks) router.newSubnetEntry(network, 24, 0);
+        return router;
+    }
+
+    private static void link(Router a, Router b, String[] aOptions, String[] bOptions) {
+        int port = nextPort;
+        nextPort += 2;
+        a.newInterface(HOST + ":" + port, HOST + ":" + (port + 1), with(aOptions));
+        b.newInterface(HOST + ":" + (port + 1), HOST + ":" + port, with(bOptions));
+    }
+
+    private static String[] with(String[] options) {
+        String[] all = new String[options.length + 1];
+        all[0] = "transport=mem";
+        System.arraycopy(options, 0, all, 1, options.length);
+        return all;
+    }
+
+    private void start(Router... routers) {
+        for (Router router : routers) {
+            router.start(scheduler);
+            started.add(router);
+        }
+    }
+
+    private static int network(int i) {
+        return 0x0A000000 | i << 8;
+    }
+
+    private static int metric(Router router, int network) {
+        return metric(router, network, 24);
+    }
+
+    /**
+     * the metric of a prefix in the router's latest snapshot, -1 if it isn't in the table
+     */
+    private static int metric(Router router, int network, int length) {
+        RouteSnapshot routes = router.snapshot();
+        for (int slot = 0; slot < routes.limit(); slot++) {
+            if (routes.inUse(slot) && routes.address(slot) == network && routes.prefix(slot) == length) {
+                return routes.metric(slot);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * a request, either for the whole table with family 0 or for one /24 per network
+     */
+    private static ByteBuffer request(int family, int... networks) {
+        ByteBuffer request = ByteBuffer.allocate(RipDecoder.MAX_SIZE);
+        request.put((byte) 1).put((byte) 2).putShort((short) 0);
+        for (int network : family == 0 ? new int[]{0} : networks) {
+            request.putShort((short) family).putShort((short) 0);
+            request.putInt(network).putInt(family == 0 ? 0 : PrefixTrie.mask(24)).putInt(0);
+            request.putInt(INFINITY);
+        }
+        return request.flip();
+    }
+
+    /**
+     * the far end of a link with no router behind it, sends what it is given and keeps the entries of the responses
+     * it gets
+     */
+    private class Probe {
+        private final MemoryTransport link;
+        private final ReceiveRing ring;
+        private final RipDecoder decoder = new RipDecoder();
+
+        Probe(int port, int remotePort) {
+            try {
+                link = new MemoryTransport(Router.parseAddress(HOST), port, Router.parseAddress(HOST), remotePort);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            ring = new ReceiveRing(link.receiveBuffers(), RipDecoder.MAX_SIZE);
+            link.open(scheduler, ring, () -> {
+            });
+        }
+
+        void send(ByteBuffer datagram) {
+            link.send(datagram);
+        }
+
+        /**
+         * the entries of every response since the last call, each as address, prefix length and metric
+         */
+        List<int[]> received() {
+            List<int[]> entries = new ArrayList<>();
+            ByteBuffer datagram;
+            while ((datagram = ring.peek()) != null) {
+                if (datagram.get(0) == 2) {
+                    decoder.wrap(datagram);
+                    while (decoder.next()) {
+                        entries.add(new int[]{decoder.address(), decoder.prefixLength(), decoder.metric()});
+                    }
+                }
+                ring.release();
+            }
+            return entries;
+        }
+
+        void close() {
+            link.close();
+        }
+    }
+}